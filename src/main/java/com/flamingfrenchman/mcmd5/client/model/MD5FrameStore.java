@@ -0,0 +1,177 @@
+package com.flamingfrenchman.mcmd5.client.model;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/*
+ * Skinned positions and normals for every frame of a clip, six shorts per vertex.
+ * HALF stores half precision floats. QUANTIZED stores positions as 16 bit fractions
+ * of each frame's bounding box and normals as signed 16 bit fractions, which keeps
+ * more precision on large models. The data lives either in a heap array or in a
+ * direct buffer outside the GC heap; reads use absolute indices only so any number
+ * of threads can sample at once.
+ */
+final class MD5FrameStore {
+    enum Encoding { HALF, QUANTIZED }
+
+    private static final int SHORTS_PER_VERTEX = 6;
+
+    private final Encoding encoding;
+    private final int frames;
+    private final int vertices;
+    private final ShortBuffer data;
+    // per frame min xyz then extent xyz, only used when quantized
+    private final float[] bounds;
+
+    MD5FrameStore(Encoding encoding, int frames, int vertices, boolean direct) {
+        this.encoding = encoding;
+        this.frames = frames;
+        this.vertices = vertices;
+        int size = frames * vertices * SHORTS_PER_VERTEX;
+        this.data = direct ? ByteBuffer.allocateDirect(size * 2).order(ByteOrder.nativeOrder()).asShortBuffer()
+                : ShortBuffer.wrap(new short[size]);
+        this.bounds = new float[frames * 6];
+    }
+
+    static long sizeOf(int frames, int vertices) {
+        return (long) frames * vertices * SHORTS_PER_VERTEX * 2;
+    }
+
+    int getFrameCount() {
+        return frames;
+    }
+
+    boolean contains(int frame) {
+        return frame >= 0 && frame < frames;
+    }
+
+    void store(int frame, float[] positions, float[] normals) {
+        int base = frame * vertices * SHORTS_PER_VERTEX;
+        if(encoding == Encoding.HALF) {
+            for(int v = 0 ; v < vertices ; ++v) {
+                int o = base + v * SHORTS_PER_VERTEX;
+                for(int c = 0 ; c < 3 ; ++c) {
+                    data.put(o + c, toHalf(positions[v * 3 + c]));
+                    data.put(o + 3 + c, toHalf(normals[v * 3 + c]));
+                }
+            }
+            return;
+        }
+
+        int b = frame * 6;
+        for(int c = 0 ; c < 3 ; ++c) {
+            float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+            for(int v = 0 ; v < vertices ; ++v) {
+                min = Math.min(min, positions[v * 3 + c]);
+                max = Math.max(max, positions[v * 3 + c]);
+            }
+            bounds[b + c] = vertices == 0 ? 0 : min;
+            bounds[b + 3 + c] = vertices == 0 ? 0 : max - min;
+        }
+        for(int v = 0 ; v < vertices ; ++v) {
+            int o = base + v * SHORTS_PER_VERTEX;
+            for(int c = 0 ; c < 3 ; ++c) {
+                float extent = bounds[b + 3 + c];
+                float t = extent > 0 ? (positions[v * 3 + c] - bounds[b + c]) / extent : 0;
+                data.put(o + c, (short) Math.round(t * 65535));
+                data.put(o + 3 + c, (short) Math.round(Math.max(-1, Math.min(1, normals[v * 3 + c])) * 32767));
+            }
+        }
+    }
+
+    /*
+     * Writes frame, blended linearly towards nextFrame by progress, into three floats
+     * per vertex of outPositions and outNormals. Blended normals are renormalized,
+     * without outNormals they are skipped.
+     */
+    void sample(int frame, int nextFrame, float progress, float[] outPositions, @Nullable float[] outNormals) {
+        boolean blend = progress > 1e-5 && frame != nextFrame;
+        if(progress > 1 - 1e-5) {
+            frame = nextFrame;
+            blend = false;
+        }
+        int a = frame * vertices * SHORTS_PER_VERTEX;
+        int b = nextFrame * vertices * SHORTS_PER_VERTEX;
+        for(int v = 0 ; v < vertices ; ++v) {
+            int o = v * 3;
+            int s = v * SHORTS_PER_VERTEX;
+            for(int c = 0 ; c < 3 ; ++c) {
+                float p = position(frame, a + s, c);
+                if(blend) p += (position(nextFrame, b + s, c) - p) * progress;
+                outPositions[o + c] = p;
+            }
+            if(outNormals == null) continue;
+
+            for(int c = 0 ; c < 3 ; ++c) {
+                float n = normal(a + s, c);
+                if(blend) n += (normal(b + s, c) - n) * progress;
+                outNormals[o + c] = n;
+            }
+            if(blend || encoding == Encoding.QUANTIZED) {
+                float len = (float) Math.sqrt(outNormals[o] * outNormals[o] + outNormals[o + 1] * outNormals[o + 1] + outNormals[o + 2] * outNormals[o + 2]);
+                if(len > 1e-12f) {
+                    outNormals[o] /= len;
+                    outNormals[o + 1] /= len;
+                    outNormals[o + 2] /= len;
+                }
+            }
+        }
+    }
+
+    private float position(int frame, int o, int c) {
+        if(encoding == Encoding.HALF) return fromHalf(data.get(o + c));
+        return bounds[frame * 6 + c] + (data.get(o + c) & 0xFFFF) / 65535.0F * bounds[frame * 6 + 3 + c];
+    }
+
+    private float normal(int o, int c) {
+        if(encoding == Encoding.HALF) return fromHalf(data.get(o + 3 + c));
+        return data.get(o + 3 + c) / 32767.0F;
+    }
+
+    // IEEE 754 binary16, rounded to nearest
+    static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7FFFFFFF;
+        if(abs >= 0x7F800000) {
+            // infinity or NaN
+            return (short) (sign | 0x7C00 | (abs > 0x7F800000 ? 0x200 : 0));
+        }
+        if(abs >= 0x477FF000) {
+            // too large, becomes infinity
+            return (short) (sign | 0x7C00);
+        }
+        if(abs >= 0x38800000) {
+            // normal
+            int rounded = abs + 0xFFF + ((abs >>> 13) & 1);
+            return (short) (sign | ((rounded - 0x38000000) >>> 13));
+        }
+        if(abs < 0x33000000) {
+            // too small, becomes zero
+            return (short) sign;
+        }
+        // subnormal
+        int exponent = abs >>> 23;
+        int mantissa = (abs & 0x7FFFFF) | 0x800000;
+        int shift = 126 - exponent;
+        int half = mantissa >>> shift;
+        int rest = mantissa & ((1 << shift) - 1);
+        int midpoint = 1 << (shift - 1);
+        if(rest > midpoint || (rest == midpoint && (half & 1) != 0)) ++half;
+        return (short) (sign | half);
+    }
+
+    static float fromHalf(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        if(exponent == 0x1F) return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        if(exponent != 0) return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+        if(mantissa == 0) return Float.intBitsToFloat(sign);
+        // subnormal
+        float value = mantissa / 16777216.0F;
+        return sign != 0 ? -value : value;
+    }
+}
@@ -0,0 +1,270 @@
+package com.flamingfrenchman.mcmd5.client.model;
+
+import com.flamingfrenchman.mcmd5.Mcmd5;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.entity.Entity;
+import net.minecraftforge.common.model.TRSRTransformation;
+import org.apache.logging.log4j.Level;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * One animated copy of a model, usually one per entity holding it. The render
+ * thread reports which frame it wants and draws the pose the worker finished for
+ * it: on every client tick MD5Pipeline may skin, on its worker thread, the two
+ * frames around the coming tick, and the render thread blends between them by how
+ * far into the tick it is. Until there is such a pose, and without background
+ * skinning, the render thread skins the pose it draws itself, through skinNow.
+ *
+ * One holder can show the model at several frames at once, like a hotbar with two
+ * copies of an item or every stack in a gui sharing the null holder. Each of those
+ * is followed as its own track: an observed frame belongs to the track that
+ * predicts it, or that last showed it, and starts a new track otherwise.
+ */
+final class MD5Instance {
+    // tracks nobody observed for this many ticks are dropped
+    private static final long TRACK_EXPIRY = 20;
+    // skinned frames per track: up to four the last two poses show, and two being written
+    private static final int KEYFRAMES = 6;
+
+    interface Skinner {
+        ImmutableList<BakedQuad> skin(int frame, int nextFrame, float progress, MD5Skinning.Incremental incremental,
+                                      ImmutableMap<String, TRSRTransformation> overrides, @Nullable MD5QuadPool pool);
+
+        void skinFrame(int frame, MD5Skinning.Incremental incremental, ImmutableMap<String, TRSRTransformation> overrides,
+                       Keyframe out);
+
+        ImmutableList<BakedQuad> blend(Keyframe from, Keyframe to, float progress, @Nullable MD5QuadPool pool);
+    }
+
+    // vertices of one skinned frame, three floats per vertex
+    static final class Keyframe {
+        float[] positions = new float[0];
+        float[] normals = new float[0];
+
+        void ensure(int vertices, boolean withNormals) {
+            if(positions.length != vertices * 3) positions = new float[vertices * 3];
+            if(withNormals && normals.length != vertices * 3) normals = new float[vertices * 3];
+        }
+    }
+
+    // the skinned frames at the start and the end of one tick
+    static final class Pose {
+        final int frame;
+        final Keyframe from;
+        final Keyframe to;
+        // version of the joint overrides the pose was skinned with
+        final int overrides;
+
+        private Pose(int frame, Keyframe from, Keyframe to, int overrides) {
+            this.frame = frame;
+            this.from = from;
+            this.to = to;
+            this.overrides = overrides;
+        }
+    }
+
+    // one stack's way through the animation
+    final class Track {
+        // the pose of the coming tick, and the one before that the render thread may still be drawing
+        private final AtomicReference<Pose> front = new AtomicReference<>();
+        private final AtomicReference<Pose> back = new AtomicReference<>();
+        // written in turn, so a keyframe is only written again once neither pose shows it
+        private final Keyframe[] keyframes = new Keyframe[KEYFRAMES];
+        private int nextKeyframe;
+        // skinned vertices of this track's last update, only the worker touches it
+        private final MD5Skinning.Incremental skin = new MD5Skinning.Incremental();
+        // the same for poses the render thread skins itself
+        private final MD5Skinning.Incremental liveSkin = new MD5Skinning.Incremental();
+        // quads the render thread rewrites in place, null when MD5Loader.pooledQuads is off
+        @Nullable
+        private final MD5QuadPool livePool = MD5Loader.pooledQuads ? new MD5QuadPool() : null;
+        private volatile int observedFrame;
+        private volatile long observedTick;
+        private volatile long lastUsed;
+
+        private Track(int frame, long tick) {
+            this.observedFrame = frame;
+            this.observedTick = tick;
+            this.lastUsed = tick;
+        }
+
+        // the finished pose starting at frame, null if the worker has none
+        @Nullable
+        Pose getPose(int frame) {
+            Pose pose = front.get();
+            if(pose != null && pose.frame == frame) return pose;
+            pose = back.get();
+            return pose != null && pose.frame == frame ? pose : null;
+        }
+
+        /*
+         * Quads progress of the way through the pose, blended from its two skinned
+         * frames into this track's pool. Render thread only.
+         */
+        ImmutableList<BakedQuad> blend(Pose pose, float progress) {
+            try {
+                return skinner.blend(pose.from, pose.to, progress, livePool);
+            }
+            catch (RuntimeException e) {
+                if(livePool != null) livePool.abort();
+                throw e;
+            }
+        }
+
+        /*
+         * Skins a pose right away on the calling thread, only again where joints moved
+         * since the last one it skinned for this track, into quads of its own pool.
+         * The quads stay as they are until the pose after the next one, a render frame
+         * normally skins a track once. Render thread only.
+         */
+        ImmutableList<BakedQuad> skinNow(int frame, int nextFrame, float progress, ImmutableMap<String, TRSRTransformation> overrides) {
+            try {
+                return skinner.skin(frame, nextFrame, progress, liveSkin, overrides, livePool);
+            }
+            catch (RuntimeException e) {
+                liveSkin.invalidate();
+                if(livePool != null) livePool.abort();
+                throw e;
+            }
+        }
+
+        // frames advance by one per tick from the last one the render thread asked for
+        private int predict(long tick) {
+            long frame = observedFrame + (tick - observedTick);
+            if(frameCount > 0) frame = Math.floorMod(frame, (long) frameCount);
+            return (int) frame;
+        }
+
+        private int next(int frame) {
+            return frameCount > 0 ? (frame + 1) % frameCount : frame + 1;
+        }
+
+        // the worker stays a tick ahead of what the render thread draws
+        private boolean needsUpdate(long tick) {
+            Pose pose = front.get();
+            return pose == null || pose.frame != predict(tick + 1) || pose.overrides != overrides.getVersion();
+        }
+
+        private Keyframe nextKeyframe() {
+            Keyframe keyframe = keyframes[nextKeyframe];
+            if(keyframe == null) keyframes[nextKeyframe] = keyframe = new Keyframe();
+            nextKeyframe = (nextKeyframe + 1) % KEYFRAMES;
+            return keyframe;
+        }
+
+        // skins the pose of the tick after tick, worker only
+        private void update(long tick) {
+            int frame = predict(tick + 1);
+            // read the version first, a change made meanwhile then still counts as pending
+            int version = overrides.getVersion();
+            ImmutableMap<String, TRSRTransformation> snapshot = overrides.snapshot();
+            Pose last = front.get();
+            Keyframe from;
+            if(last != null && last.overrides == version && next(last.frame) == frame) {
+                // where the last pose ends, only the new end needs skinning
+                from = last.to;
+            }
+            else {
+                from = nextKeyframe();
+                skinner.skinFrame(frame, skin, snapshot, from);
+            }
+            Keyframe to = nextKeyframe();
+            skinner.skinFrame(next(frame), skin, snapshot, to);
+            back.set(last);
+            front.set(new Pose(frame, from, to, version));
+        }
+    }
+
+    private final Skinner skinner;
+    @Nullable
+    private final Entity holder;
+    // frames in the clip, predicted frames wrap around at this count
+    private final int frameCount;
+    private final MD5JointOverrides overrides;
+    private final List<Track> tracks = new CopyOnWriteArrayList<>();
+    private volatile long lastUsed;
+    private volatile long lastUpdated;
+
+    MD5Instance(Skinner skinner, @Nullable Entity holder, int frameCount) {
+        this.skinner = skinner;
+        this.holder = holder;
+        this.frameCount = frameCount;
+        this.overrides = MD5Pipeline.INSTANCE.getJointOverrides(holder);
+    }
+
+    // the track showing frame at tick, render thread only
+    Track observe(int frame, long tick) {
+        lastUsed = tick;
+        Track track = null;
+        for(Track candidate : tracks) {
+            if(candidate.predict(tick) == frame) {
+                track = candidate;
+                break;
+            }
+        }
+        if(track == null) {
+            // a stack whose frame stands still
+            for(Track candidate : tracks) {
+                if(candidate.observedFrame == frame) {
+                    track = candidate;
+                    break;
+                }
+            }
+        }
+        if(track == null) {
+            track = new Track(frame, tick);
+            tracks.add(track);
+        }
+        track.observedFrame = frame;
+        track.observedTick = tick;
+        track.lastUsed = tick;
+        return track;
+    }
+
+    // entity holding this instance, null for the shared one
+    @Nullable
+    Entity getHolder() {
+        return holder;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    long getLastUpdated() {
+        return lastUpdated;
+    }
+
+    boolean needsUpdate(long tick) {
+        for(Track track : tracks) {
+            if(tick - track.lastUsed <= TRACK_EXPIRY && track.needsUpdate(tick)) return true;
+        }
+        return false;
+    }
+
+    /*
+     * Skins the two frames every track expects around the coming tick and swaps
+     * them in. A track that fails keeps its last pose, the others are still updated.
+     * Runs on the worker thread.
+     */
+    void update(long tick) {
+        tracks.removeIf(track -> tick - track.lastUsed > TRACK_EXPIRY);
+        for(Track track : tracks) {
+            if(!track.needsUpdate(tick)) continue;
+            try {
+                track.update(tick);
+            }
+            catch (RuntimeException e) {
+                track.skin.invalidate();
+                Mcmd5.logger.log(Level.ERROR, "background skinning failed", e);
+            }
+        }
+        lastUpdated = tick;
+    }
+}
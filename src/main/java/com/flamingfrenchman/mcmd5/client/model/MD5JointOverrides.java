@@ -0,0 +1,78 @@
+package com.flamingfrenchman.mcmd5.client.model;
+
+import com.flamingfrenchman.mcmd5.skeleton.MD5Skeleton;
+import com.google.common.collect.ImmutableMap;
+import net.minecraftforge.common.model.TRSRTransformation;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Local transforms applied on top of the animation to named joints, for things like
+ * looking at a target or weapon recoil. An override is relative to the joint's
+ * animated pose and carries over to everything below it in the hierarchy. Get one
+ * from MD5Pipeline.getJointOverrides; it is safe to change from any thread, every
+ * model the entity holds picks the change up the next time it is skinned, in the
+ * background or live. Models with pre-baked frames skin live while overrides are
+ * set. Poses fixed by a PerspectivePolicy (FROZEN, BIND, REDUCED) don't show them.
+ */
+public final class MD5JointOverrides {
+    private final Map<String, TRSRTransformation> overrides = new ConcurrentHashMap<>();
+    private final AtomicInteger version = new AtomicInteger();
+    // the last snapshot and the version it was taken at
+    @Nullable
+    private volatile Snapshot snapshot;
+
+    MD5JointOverrides() {}
+
+    public void set(String joint, TRSRTransformation local) {
+        overrides.put(MD5Skeleton.unquote(joint), local);
+        version.incrementAndGet();
+    }
+
+    @Nullable
+    public TRSRTransformation get(String joint) {
+        return overrides.get(MD5Skeleton.unquote(joint));
+    }
+
+    public void remove(String joint) {
+        if(overrides.remove(MD5Skeleton.unquote(joint)) != null) version.incrementAndGet();
+    }
+
+    public void clear() {
+        if(overrides.isEmpty()) return;
+        overrides.clear();
+        version.incrementAndGet();
+    }
+
+    // bumped on every change, lets instances tell whether their pose is out of date
+    int getVersion() {
+        return version.get();
+    }
+
+    /*
+     * Keyed by unquoted joint name. The same map is returned until the overrides
+     * change, so it can be told apart from an older one by identity.
+     */
+    ImmutableMap<String, TRSRTransformation> snapshot() {
+        // read the version first, a change made while copying then gets a new snapshot next time
+        int current = version.get();
+        Snapshot last = snapshot;
+        if(last != null && last.version == current) return last.overrides;
+        ImmutableMap<String, TRSRTransformation> copy = ImmutableMap.copyOf(overrides);
+        snapshot = new Snapshot(current, copy);
+        return copy;
+    }
+
+    private static final class Snapshot {
+        private final int version;
+        private final ImmutableMap<String, TRSRTransformation> overrides;
+
+        private Snapshot(int version, ImmutableMap<String, TRSRTransformation> overrides) {
+            this.version = version;
+            this.overrides = overrides;
+        }
+    }
+}
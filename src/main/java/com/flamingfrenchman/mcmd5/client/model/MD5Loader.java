@@ -2,6 +2,7 @@ package com.flamingfrenchman.mcmd5.client.model;
 
 import com.flamingfrenchman.mcmd5.Mcmd5;
 import com.flamingfrenchman.mcmd5.proxy.ClientProxy;
+import com.flamingfrenchman.mcmd5.skeleton.MD5Skeleton;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -28,7 +29,6 @@ import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.World;
 import net.minecraftforge.client.model.*;
-import net.minecraftforge.client.model.pipeline.UnpackedBakedQuad;
 import net.minecraftforge.common.model.IModelPart;
 import net.minecraftforge.common.model.IModelState;
 import net.minecraftforge.common.model.TRSRTransformation;
@@ -46,13 +46,51 @@ import javax.annotation.Nullable;
 import javax.vecmath.*;
 import java.io.FileNotFoundException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 public enum MD5Loader implements ICustomModelLoader {
 
     INSTANCE;
 
+    // fork/join skinning across meshes and vertex ranges, for models with at least this many vertices
+    public static boolean parallelSkinning = true;
+    public static int parallelSkinningThreshold = 8192;
+    // strongest weights kept per vertex at load time, 0 keeps them all
+    public static int maxInfluences = 4;
+    // largest pre-baked frame set a model may keep, in bytes, unless its custom data says otherwise
+    public static long prebakeMemoryCap = 16L << 20;
+    /*
+     * Animated items held by entities are skinned a tick ahead on a worker, see
+     * MD5Pipeline. The worker skins the frames at both ends of the coming tick and the
+     * render thread only blends their vertices every render frame.
+     */
+    public static boolean backgroundSkinning = true;
+    // worker time per tick for background skinning, instances past it are skinned live until the worker gets to them
+    public static float skinningBudgetMillis = 4.0F;
+    // quads drawn for an instance are rewritten in place instead of allocated anew for every pose
+    public static boolean pooledQuads = true;
+    // steps between two frames the render thread rounds interpolation to, so stacks drawn in the same frame share a model
+    public static int interpolationSteps = 64;
+    // bytes of skinned quads MD5QuadCache keeps across all models, read again on every resource reload
+    public static long quadCacheBudget = 32L << 20;
+    /*
+     * Quads of poses that don't move which can never face the camera are left out in
+     * these perspectives. The angle is how far in degrees the view direction may stray
+     * from the one the transform implies, negative turns the culling off. Only guis
+     * are culled by default: they are orthographic with nothing on top of the
+     * transform, while held items also bob, sway, swing by up to about 80 degrees and
+     * are seen in perspective.
+     */
+    public static float guiCullAngle = 0.0F;
+    public static float firstPersonCullAngle = -1.0F;
+    public static float fixedCullAngle = -1.0F;
+    // triangles sharing an edge are drawn as one quad if their normals are at most this many degrees apart
+    public static float quadPairingAngle = 2.0F;
+
     private IResourceManager manager;
 
     private final Set<String> enabledDomains = new HashSet<>();
@@ -69,11 +107,24 @@ public enum MD5Loader implements ICustomModelLoader {
             ((ClientProxy) Mcmd5.proxy).clientDebug(Level.INFO, "Domain " + domain + " registered for loader.");
     }
 
+    /*
+     * Returns the parsed model for a location previously handed to loadModel, or
+     * null if it was never loaded (or failed to). Used for joint sockets and other
+     * queries that don't need a baked model.
+     */
+    @Nullable
+    public MD5Model getModel(ResourceLocation modelLocation)
+    {
+        return cache.get(new ResourceLocation(modelLocation.getResourceDomain(), modelLocation.getResourcePath()));
+    }
+
     @Override
     public void onResourceManagerReload(IResourceManager manager)
     {
         this.manager = manager;
         cache.clear();
+        // keyed by the old bakes, nothing would ever hit them again; also picks up a new budget
+        MD5QuadCache.INSTANCE.invalidateAll();
     }
 
     @Override
@@ -202,6 +253,22 @@ public enum MD5Loader implements ICustomModelLoader {
             return parent;
         }
 
+        @Override
+        public boolean equals(Object o)
+        {
+            if(this == o) return true;
+            if(!(o instanceof MD5State)) return false;
+            MD5State other = (MD5State) o;
+            return animation == other.animation && frame == other.frame && nextFrame == other.nextFrame
+                    && Float.compare(progress, other.progress) == 0 && Objects.equals(parent, other.parent);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(System.identityHashCode(animation), frame, nextFrame, progress, parent);
+        }
+
         @Override
         public Optional<TRSRTransformation> apply(Optional<? extends IModelPart> part)
         {
@@ -411,6 +478,9 @@ public enum MD5Loader implements ICustomModelLoader {
         private final boolean gui3d;
         private final int defaultKey;
         private ImmutableList<WrappedJoint> joints;
+        @Nullable
+        private final PrebakedFrames frames;
+        private final PerspectivePolicy policy;
 
         /*public ModelWrapper(ResourceLocation modelLocation, MD5Model model, ImmutableList<WrappedJoint> animJoints,
                             boolean smooth, boolean gui3d, int defaultKey)
@@ -437,7 +507,24 @@ public enum MD5Loader implements ICustomModelLoader {
             this.textures = buildTextures(modelLocation, model.getMeshes());
             this.meshes = process(model, joints);
             this.transforms = buildTransforms(model.getTransforms());
-            this.state = buildState(model.getFrames(), joints, transforms);
+            this.state = buildState(model.getFrames(), model.getFrameRate(), joints, transforms);
+            this.frames = null;
+            this.policy = PerspectivePolicy.DEFAULT;
+        }
+
+        private ModelWrapper(ModelWrapper other, @Nullable PrebakedFrames frames, PerspectivePolicy policy) {
+            this.modelLocation = other.modelLocation;
+            this.model = other.model;
+            this.joints = other.joints;
+            this.smooth = other.smooth;
+            this.gui3d = other.gui3d;
+            this.defaultKey = other.defaultKey;
+            this.textures = other.textures;
+            this.meshes = other.meshes;
+            this.transforms = other.transforms;
+            this.state = other.state;
+            this.frames = frames;
+            this.policy = policy;
         }
 
         private static ImmutableMap<String, ResourceLocation> buildTextures(ResourceLocation modelLocation, ImmutableList<MD5Model.MD5Mesh> meshes)
@@ -453,12 +540,30 @@ public enum MD5Loader implements ICustomModelLoader {
 
         private static ImmutableList<WrappedMesh> process(MD5Model model, ImmutableList<WrappedJoint> animJoints) {
             ImmutableList.Builder<WrappedMesh> builder = ImmutableList.builder();
+            boolean[] staticJoints = animJoints == null ? null : findStaticJoints(model);
             for(MD5Model.MD5Mesh mesh : model.getMeshes()) {
-                builder.add(generateWrappedMesh(model.getJoints(), mesh, animJoints));
+                builder.add(generateWrappedMesh(model.getJoints(), mesh, animJoints, staticJoints));
             }
             return builder.build();
         }
 
+        // joints whose channels never change over the animation, and whose parents never do either
+        private static boolean[] findStaticJoints(MD5Model model) {
+            ImmutableList<MD5Model.MD5AnimJoint> animJoints = model.getAnimJoints();
+            ImmutableList<MD5Model.MD5Frame> frames = model.getFrames();
+            boolean[] staticJoints = new boolean[animJoints.size()];
+            for(int j = 0 ; j < staticJoints.length ; ++j) {
+                int parent = animJoints.get(j).getParent();
+                boolean still = parent < 0 || staticJoints[parent];
+                for(int f = 1 ; still && f < frames.size() ; ++f) {
+                    still = frames.get(f).getPositions()[j].equals(frames.get(0).getPositions()[j])
+                            && frames.get(f).getOrientations()[j].equals(frames.get(0).getOrientations()[j]);
+                }
+                staticJoints[j] = still;
+            }
+            return staticJoints;
+        }
+
         private static ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> buildTransforms(ImmutableList<MD5Model.MD5Transform> transforms) {
             ImmutableMap.Builder<ItemCameraTransforms.TransformType, TRSRTransformation> builder = ImmutableMap.builder();
             for(MD5Model.MD5Transform transform : transforms) {
@@ -472,15 +577,21 @@ public enum MD5Loader implements ICustomModelLoader {
             return builder.build();
         }
 
-        private static WrappedMesh generateWrappedMesh(ImmutableList<MD5Model.MD5Joint> joints, MD5Model.MD5Mesh mesh, ImmutableList<WrappedJoint> animJoints) {
+        private static WrappedMesh generateWrappedMesh(ImmutableList<MD5Model.MD5Joint> joints, MD5Model.MD5Mesh mesh,
+                                                       ImmutableList<WrappedJoint> animJoints, @Nullable boolean[] staticJoints) {
             //log("generating wrapped mesh");
             MD5Model.MD5Vertex[] vertices = mesh.getVertices();
             MD5Model.MD5Weight[] weights = mesh.getWeights();
-            ImmutableList.Builder<WrappedVertex> vertexBuilder = ImmutableList.builder();
-            ImmutableList.Builder<Integer> triangleBuilder = ImmutableList.builder();
+            MD5Model.MD5Triangle[] triangles = mesh.getTriangles();
+            final int stride = MD5Skinning.BIND_STRIDE;
+            float[] bind = new float[vertices.length * stride];
+            int[] indices = new int[triangles.length * 3];
+            Matrix4f m = new Matrix4f();
+            Point3f weightPos = new Point3f();
 
             for (int j = 0 ; j < vertices.length ; ++j) {
                 MD5Model.MD5Vertex vertex = vertices[j];
+                int b = j * stride;
 
                 int startWeight = vertex.getWeightStart();
                 int numWeights = vertex.getNumweights();
@@ -492,64 +603,245 @@ public enum MD5Loader implements ICustomModelLoader {
                     MD5Model.MD5Weight weight = weights[i];
                     MD5Model.MD5Joint joint = joints.get(weight.getJointIndex());
 
-                    Vector3f weightPos = weight.getPos();
-                    //extend pos to quat so it can be rotated
-                    //Quat4f rotatedPos = joint.getRot();
-                    Matrix4f m = new Matrix4f(joint.getRot(), joint.getPos(), 1.0F);
-                    Vector4f acumPos = new Vector4f(weightPos.x, weightPos.y, weightPos.z, 1);
-                    m.transform(acumPos);
-                    acumPos.scale(weight.getBias());
-                    vertex.addToPos(new Vector3f(acumPos.x, acumPos.y, acumPos.z));
+                    m.set(joint.getRot(), joint.getPos(), 1.0F);
+                    weightPos.set(weight.getPos());
+                    m.transform(weightPos);
+                    bind[b + MD5Skinning.POSITION] += weightPos.x * weight.getBias();
+                    bind[b + MD5Skinning.POSITION + 1] += weightPos.y * weight.getBias();
+                    bind[b + MD5Skinning.POSITION + 2] += weightPos.z * weight.getBias();
                 }
+                bind[b + MD5Skinning.UV] = vertex.getTexCoords().x;
+                bind[b + MD5Skinning.UV + 1] = vertex.getTexCoords().y;
             }
 
-            for (MD5Model.MD5Triangle tri : mesh.getTriangles()) {
+            for (int t = 0 ; t < triangles.length ; ++t) {
+                MD5Model.MD5Triangle tri = triangles[t];
 
                 // Normals
                 int i0 = tri.getV0();
                 int i1 = tri.getV1();
                 int i2 = tri.getV2();
-                MD5Model.MD5Vertex v0 = vertices[i0];
-                MD5Model.MD5Vertex v1 = vertices[i1];
-                MD5Model.MD5Vertex v2 = vertices[i2];
-                triangleBuilder.add(i0);
-                triangleBuilder.add(i1);
-                triangleBuilder.add(i2);
+                indices[t * 3] = i0;
+                indices[t * 3 + 1] = i1;
+                indices[t * 3 + 2] = i2;
 
                 // calculate triangle face normal as normal cross n2
                 // add to vertex and normalize later
-                Vector3f normal = (new Vector3f(v2.getPos()));
-                normal.sub(v0.getPos());
-                Vector3f n2 = (new Vector3f(v1.getPos()));
-                n2.sub(v0.getPos());
-                normal.cross(normal, n2);
-
-                v0.addToNorm(normal);
-                v1.addToNorm(normal);
-                v2.addToNorm(normal);
+                int p0 = i0 * stride, p1 = i1 * stride, p2 = i2 * stride;
+                float ax = bind[p2] - bind[p0], ay = bind[p2 + 1] - bind[p0 + 1], az = bind[p2 + 2] - bind[p0 + 2];
+                float bx = bind[p1] - bind[p0], by = bind[p1 + 1] - bind[p0 + 1], bz = bind[p1 + 2] - bind[p0 + 2];
+                float nx = ay * bz - az * by, ny = az * bx - ax * bz, nz = ax * by - ay * bx;
+                addNormal(bind, p0, nx, ny, nz);
+                addNormal(bind, p1, nx, ny, nz);
+                addNormal(bind, p2, nx, ny, nz);
             }
 
-            for(MD5Model.MD5Vertex vertex : vertices) {
+            for(int v = 0 ; v < vertices.length ; ++v) {
                 // remember to normalize
-                vertex.getNorm().normalize();
-                ImmutableList.Builder<WrappedJoint> boundJoints = ImmutableList.builder();
-                ImmutableList.Builder<Float> boundBiases = ImmutableList.builder();
-                int weightStart = vertex.getWeightStart();
-                int numWeights = vertex.getNumweights();
-                for(int i = 0 ; i < numWeights ; ++i) {
-                    if(animJoints != null) {
-                        MD5Model.MD5Weight w = weights[weightStart + i];
-                        boundJoints.add(animJoints.get(w.getJointIndex()));
-                        boundBiases.add(w.getBias());
+                int n = v * stride + MD5Skinning.NORMAL;
+                float len = (float) Math.sqrt(bind[n] * bind[n] + bind[n + 1] * bind[n + 1] + bind[n + 2] * bind[n + 2]);
+                if(len > 0) {
+                    bind[n] /= len;
+                    bind[n + 1] /= len;
+                    bind[n + 2] /= len;
+                }
+            }
+
+            // keep the strongest influences of every vertex, then sort the vertices into
+            // buckets so each bucket skins with a fixed width loop. vertices that only
+            // follow static joints go first so they can be skinned once and reused, and
+            // single joint vertices are grouped by joint so they share one matrix
+            int[][] kept = new int[vertices.length][];
+            long[] keys = new long[vertices.length];
+            Integer[] order = new Integer[vertices.length];
+            for(int v = 0 ; v < vertices.length ; ++v) {
+                int[] k = animJoints == null ? new int[0] : limitInfluences(vertices[v], weights, maxInfluences);
+                boolean still = true;
+                for(int i : k) still &= staticJoints != null && staticJoints[weights[i].getJointIndex()];
+                int rigid = k.length == 1 ? weights[k[0]].getJointIndex() : -1;
+                kept[v] = k;
+                keys[v] = ((still ? 0L : 1L) << 48) | ((long) k.length << 24) | (rigid + 1);
+                order[v] = v;
+            }
+            Arrays.sort(order, (x, y) -> Long.compare(keys[x], keys[y]));
+
+            int[] remap = new int[vertices.length];
+            float[] sorted = new float[bind.length];
+            int bucketCount = 0;
+            for(int v = 0 ; v < vertices.length ; ++v) {
+                remap[order[v]] = v;
+                System.arraycopy(bind, order[v] * stride, sorted, v * stride, stride);
+                if(v == 0 || keys[order[v]] != keys[order[v - 1]]) ++bucketCount;
+            }
+            for(int i = 0 ; i < indices.length ; ++i) indices[i] = remap[indices[i]];
+
+            int[] bucketStarts = new int[bucketCount + 1];
+            int[] bucketWidths = new int[bucketCount];
+            int[] bucketInfluences = new int[bucketCount];
+            int[] bucketJoints = new int[bucketCount];
+            int staticBuckets = 0;
+            int influenceCount = 0;
+            int bucket = -1;
+            for(int v = 0 ; v < vertices.length ; ++v) {
+                long key = keys[order[v]];
+                if(v == 0 || key != keys[order[v - 1]]) {
+                    ++bucket;
+                    bucketStarts[bucket] = v;
+                    bucketWidths[bucket] = kept[order[v]].length;
+                    bucketInfluences[bucket] = influenceCount;
+                    bucketJoints[bucket] = (int) (key & 0xFFFFFF) - 1;
+                    if(key >>> 48 == 0) staticBuckets = bucket + 1;
+                }
+                influenceCount += kept[order[v]].length;
+            }
+            bucketStarts[bucketCount] = vertices.length;
+
+            short[] jointIndices = new short[influenceCount];
+            float[] biases = new float[influenceCount];
+            BitSet usedStatic = new BitSet();
+            int influence = 0;
+            for(int v = 0 ; v < vertices.length ; ++v) {
+                int[] k = kept[order[v]];
+                float total = 0;
+                for(int i : k) total += weights[i].getBias();
+                for(int i = 0 ; i < k.length ; ++i, ++influence) {
+                    MD5Model.MD5Weight w = weights[k[i]];
+                    jointIndices[influence] = (short) w.getJointIndex();
+                    biases[influence] = total > 0 ? w.getBias() / total : 1.0F / k.length;
+                    if(v < bucketStarts[staticBuckets]) usedStatic.set(w.getJointIndex());
+                }
+            }
+
+            // vertices of every joint, ascending, so a moved joint finds what to re-skin
+            int jointCount = 0;
+            for(short j : jointIndices) jointCount = Math.max(jointCount, j + 1);
+            int[] jointVertexStarts = new int[jointCount + 1];
+            int[] lastVertex = new int[jointCount];
+            Arrays.fill(lastVertex, -1);
+            for(int v = 0, i = 0 ; v < vertices.length ; ++v) {
+                for(int end = i + kept[order[v]].length ; i < end ; ++i) {
+                    int j = jointIndices[i];
+                    if(lastVertex[j] == v) continue;
+                    lastVertex[j] = v;
+                    ++jointVertexStarts[j + 1];
+                }
+            }
+            for(int j = 0 ; j < jointCount ; ++j) jointVertexStarts[j + 1] += jointVertexStarts[j];
+            int[] jointVertices = new int[jointVertexStarts[jointCount]];
+            int[] fill = Arrays.copyOf(jointVertexStarts, jointCount);
+            Arrays.fill(lastVertex, -1);
+            for(int v = 0, i = 0 ; v < vertices.length ; ++v) {
+                for(int end = i + kept[order[v]].length ; i < end ; ++i) {
+                    int j = jointIndices[i];
+                    if(lastVertex[j] == v) continue;
+                    lastVertex[j] = v;
+                    jointVertices[fill[j]++] = v;
+                }
+            }
+
+            return new WrappedMesh(mesh.getTexture(), sorted, pairTriangles(indices, sorted), bucketStarts, bucketWidths, bucketInfluences,
+                    bucketJoints, staticBuckets, usedStatic.stream().toArray(), jointIndices, biases,
+                    jointVertexStarts, jointVertices);
+        }
+
+        /*
+         * Turns the triangles into quads, four indices each. Two triangles sharing an
+         * edge, wound the same way and flat enough in the bind pose become one quad
+         * with the shared edge as its 0-2 diagonal, so it splits back into exactly
+         * the original triangles. Triangles left over repeat their last corner.
+         */
+        private static int[] pairTriangles(int[] indices, float[] bind) {
+            final int stride = MD5Skinning.BIND_STRIDE;
+            int count = indices.length / 3;
+            float[] normals = new float[count * 3];
+            Map<Long, Integer> edges = new HashMap<>();
+            for(int t = 0 ; t < count ; ++t) {
+                int p0 = indices[t * 3] * stride, p1 = indices[t * 3 + 1] * stride, p2 = indices[t * 3 + 2] * stride;
+                float ax = bind[p2] - bind[p0], ay = bind[p2 + 1] - bind[p0 + 1], az = bind[p2 + 2] - bind[p0 + 2];
+                float bx = bind[p1] - bind[p0], by = bind[p1 + 1] - bind[p0 + 1], bz = bind[p1 + 2] - bind[p0 + 2];
+                float nx = ay * bz - az * by, ny = az * bx - ax * bz, nz = ax * by - ay * bx;
+                float len = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if(len > 0) {
+                    normals[t * 3] = nx / len;
+                    normals[t * 3 + 1] = ny / len;
+                    normals[t * 3 + 2] = nz / len;
+                }
+                for(int e = 0 ; e < 3 ; ++e) {
+                    edges.putIfAbsent(edgeKey(indices[t * 3 + e], indices[t * 3 + (e + 1) % 3]), t);
+                }
+            }
+
+            float minDot = (float) Math.cos(Math.toRadians(quadPairingAngle));
+            boolean[] paired = new boolean[count];
+            int[] quads = new int[count * 4];
+            int q = 0;
+            for(int t = 0 ; t < count ; ++t) {
+                if(paired[t]) continue;
+                paired[t] = true;
+                int best = -1, bestEdge = 0;
+                float bestDot = minDot;
+                for(int e = 0 ; e < 3 ; ++e) {
+                    // the neighbour runs along the same edge the other way
+                    Integer other = edges.get(edgeKey(indices[t * 3 + (e + 1) % 3], indices[t * 3 + e]));
+                    if(other == null || paired[other]) continue;
+                    float dot = normals[t * 3] * normals[other * 3] + normals[t * 3 + 1] * normals[other * 3 + 1]
+                            + normals[t * 3 + 2] * normals[other * 3 + 2];
+                    if(dot >= bestDot) {
+                        best = other;
+                        bestEdge = e;
+                        bestDot = dot;
                     }
                 }
 
-                //log(vertex.toString());
-                vertexBuilder.add(new WrappedVertex(vertex.getPos(), vertex.getNorm(), vertex.getTexCoords(),
-                        boundJoints.build(), boundBiases.build()));
+                if(best < 0) {
+                    quads[q++] = indices[t * 3];
+                    quads[q++] = indices[t * 3 + 1];
+                    quads[q++] = indices[t * 3 + 2];
+                    quads[q++] = indices[t * 3 + 2];
+                    continue;
+                }
+                paired[best] = true;
+                // shared edge a -> b in t, t is (b, c, a) and the neighbour (b, a, d)
+                int a = indices[t * 3 + bestEdge];
+                int b = indices[t * 3 + (bestEdge + 1) % 3];
+                int c = indices[t * 3 + (bestEdge + 2) % 3];
+                int d = indices[best * 3];
+                for(int e = 0 ; e < 3 ; ++e) {
+                    int v = indices[best * 3 + e];
+                    if(v != a && v != b) d = v;
+                }
+                quads[q++] = b;
+                quads[q++] = c;
+                quads[q++] = a;
+                quads[q++] = d;
             }
-            
-            return new WrappedMesh(mesh.getTexture(), vertexBuilder.build(), triangleBuilder.build());
+            return Arrays.copyOf(quads, q);
+        }
+
+        private static long edgeKey(int from, int to) {
+            return ((long) from << 32) | (to & 0xFFFFFFFFL);
+        }
+
+        /*
+         * Returns the weight indices of the vertex sorted by descending bias, at most
+         * limit of them. Weights without any bias are dropped.
+         */
+        private static int[] limitInfluences(MD5Model.MD5Vertex vertex, MD5Model.MD5Weight[] weights, int limit) {
+            Integer[] order = new Integer[vertex.getNumweights()];
+            for(int i = 0 ; i < order.length ; ++i) order[i] = vertex.getWeightStart() + i;
+            Arrays.sort(order, (a, b) -> Float.compare(weights[b].getBias(), weights[a].getBias()));
+
+            int count = limit > 0 ? Math.min(limit, order.length) : order.length;
+            while(count > 0 && weights[order[count - 1]].getBias() <= 0) --count;
+            int[] kept = new int[count];
+            for(int i = 0 ; i < count ; ++i) kept[i] = order[i];
+            return kept;
+        }
+
+        private static void addNormal(float[] bind, int vertex, float nx, float ny, float nz) {
+            bind[vertex + MD5Skinning.NORMAL] += nx;
+            bind[vertex + MD5Skinning.NORMAL + 1] += ny;
+            bind[vertex + MD5Skinning.NORMAL + 2] += nz;
         }
 
         private static ImmutableList<WrappedJoint> buildJoints(ImmutableList<MD5Model.MD5AnimJoint> animJoints) {
@@ -569,7 +861,7 @@ public enum MD5Loader implements ICustomModelLoader {
             return builder.add(wrappedJoints).build();
         }
 
-        private static IModelState buildState(ImmutableList<MD5Model.MD5Frame> frames, ImmutableList<WrappedJoint> joints, ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> transforms) {
+        private static IModelState buildState(ImmutableList<MD5Model.MD5Frame> frames, float frameRate, ImmutableList<WrappedJoint> joints, ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> transforms) {
             if(joints == null) return new StaticState(transforms);
 
             ImmutableTable.Builder<Integer, IModelPart, Key> keys = ImmutableTable.builder();
@@ -580,7 +872,7 @@ public enum MD5Loader implements ICustomModelLoader {
                     keys.put(frame.getNumber(), joints.get(i), new Key(positions[i], null, orientations[i]));
                 }
             }
-            return new MD5State(new Animation(0, frames.size(), 24, keys.build()), 0);
+            return new MD5State(new Animation(0, frames.size(), frameRate, keys.build()), 0);
         }
 
         public Collection<ResourceLocation> getTextures() {
@@ -615,7 +907,19 @@ public enum MD5Loader implements ICustomModelLoader {
                 }
             }
             builder.put("missingno", missing);
-            return new BakedWrapper(meshes, state, smooth, gui3d, format, builder.build(), transforms);
+            ImmutableMap<String, TextureAtlasSprite> sprites = builder.build();
+
+            // everything of the quads but positions and normals, filled in once here
+            MD5QuadEncoder encoder = MD5QuadEncoder.get(format);
+            ImmutableList.Builder<QuadTemplate> templates = ImmutableList.builder();
+            for(WrappedMesh mesh : meshes) {
+                templates.add(new QuadTemplate(mesh, sprites.get(mesh.texture), encoder));
+            }
+            BakedWrapper wrapper = new BakedWrapper(meshes, joints, state, smooth, gui3d, format, sprites, transforms, frames,
+                    templates.build(), policy);
+            wrapper.bakePolicyPoses();
+            wrapper.fixed = true;
+            return wrapper;
         }
 
         public IModelState getDefaultState() {
@@ -626,8 +930,73 @@ public enum MD5Loader implements ICustomModelLoader {
             return Optional.empty();
         }
 
+        /*
+         * Custom data understood here:
+         * "prebake": true skins every frame of the animation once, right now, and
+         *   samples the stored frames at render time instead of skinning live
+         * "prebakeEncoding": "half" (default) or "quantized"
+         * "prebakeDirect": true keeps the frames in a direct buffer outside the heap
+         * "prebakeMemoryCap": bytes the frames may take, above it the model skins live
+         * "perspectivePolicy", "perspectiveFrozenFrame", "perspectiveReducedRate": how
+         *   the item is drawn per camera transform, see PerspectivePolicy
+         */
         public IModel process(ImmutableMap<String, String> customData) {
-            return this;
+            PerspectivePolicy policy = PerspectivePolicy.parse(customData, modelLocation);
+            boolean prebake = Boolean.parseBoolean(unquote(customData.get("prebake")));
+            if(!prebake) return new ModelWrapper(this, null, policy);
+            if(frames != null || !(state instanceof MD5State)) return new ModelWrapper(this, frames, policy);
+
+            MD5FrameStore.Encoding encoding = "quantized".equalsIgnoreCase(unquote(customData.get("prebakeEncoding")))
+                    ? MD5FrameStore.Encoding.QUANTIZED : MD5FrameStore.Encoding.HALF;
+            boolean direct = Boolean.parseBoolean(unquote(customData.get("prebakeDirect")));
+            long cap = prebakeMemoryCap;
+            String capData = unquote(customData.get("prebakeMemoryCap"));
+            if(capData != null) {
+                try {
+                    cap = Long.parseLong(capData);
+                }
+                catch (NumberFormatException e) {
+                    Mcmd5.logger.log(Level.WARN, "invalid prebakeMemoryCap '" + capData + "' for md5 model " + modelLocation);
+                }
+            }
+            return new ModelWrapper(this, prebake(encoding, direct, cap), policy);
+        }
+
+        @Nullable
+        private static String unquote(@Nullable String value) {
+            if(value == null) return null;
+            value = value.trim();
+            if(value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) return value.substring(1, value.length() - 1);
+            return value;
+        }
+
+        @Nullable
+        private PrebakedFrames prebake(MD5FrameStore.Encoding encoding, boolean direct, long cap) {
+            Animation animation = ((MD5State) state).getAnimation();
+            int vertexCount = 0;
+            int[] meshBases = new int[meshes.size()];
+            for(int i = 0 ; i < meshes.size() ; ++i) {
+                meshBases[i] = vertexCount;
+                vertexCount += meshes.get(i).getVertexCount();
+            }
+            int frameCount = model.getFrames().size();
+            long size = MD5FrameStore.sizeOf(frameCount, vertexCount);
+            if(animation == null || frameCount == 0) return null;
+            if(size > cap) {
+                log("not pre-baking " + modelLocation + ", " + size + " bytes is over the cap of " + cap);
+                return null;
+            }
+
+            MD5FrameStore store = new MD5FrameStore(encoding, frameCount, vertexCount, direct);
+            float[] palette = new float[joints.size() * MD5Skinning.MATRIX_SIZE];
+            float[] positions = new float[vertexCount * 3];
+            float[] normals = new float[vertexCount * 3];
+            for(int f = 0 ; f < frameCount ; ++f) {
+                BakedWrapper.buildPalette(joints, new MD5State(animation, f), palette);
+                MD5Skinning.skinAll(meshes, meshBases, palette, positions, normals, parallelSkinning, parallelSkinningThreshold);
+                store.store(f, positions, normals);
+            }
+            return new PrebakedFrames(animation, store);
         }
 
         public IModel smoothLighting(boolean value) {
@@ -647,92 +1016,159 @@ public enum MD5Loader implements ICustomModelLoader {
         }
     }
 
-    private static final class WrappedMesh {
+    /*
+     * Mesh data is kept in flat primitive arrays rather than per-vertex objects:
+     * the interleaved bind pose (see MD5Skinning for the layout), the influences
+     * and four indices per quad. Vertices are ordered in buckets; bucket b
+     * covers vertices bucketStarts[b] until bucketStarts[b + 1], each with
+     * bucketWidths[b] influences packed from bucketInfluences[b] on, all on joint
+     * bucketJoints[b] if that is not -1. The first staticBuckets buckets only
+     * follow joints that never animate, their skinned result is kept and reused
+     * for as long as the palette entries of those joints stay the same. Vertices
+     * influenced by joint j are jointVertices[jointVertexStarts[j]] until
+     * jointVertices[jointVertexStarts[j + 1]].
+     */
+    private static final class WrappedMesh implements MD5Skinning.Skinnable<StaticPose> {
         private final String texture;
-        private final ImmutableList<WrappedVertex> vertices;
-        private final ImmutableList<Integer> triangles;
-
-        public WrappedMesh(String texture, ImmutableList<WrappedVertex> vertices,
-                           ImmutableList<Integer> triangles) {
+        private final float[] bind;
+        private final int[] quads;
+        private final int[] bucketStarts;
+        private final int[] bucketWidths;
+        private final int[] bucketInfluences;
+        private final int[] bucketJoints;
+        private final int staticBuckets;
+        private final int[] staticJoints;
+        private final short[] jointIndices;
+        private final float[] biases;
+        private final int[] jointVertexStarts;
+        private final int[] jointVertices;
+        private volatile StaticPose staticPose;
+
+        public WrappedMesh(String texture, float[] bind, int[] quads, int[] bucketStarts, int[] bucketWidths,
+                           int[] bucketInfluences, int[] bucketJoints, int staticBuckets, int[] staticJoints,
+                           short[] jointIndices, float[] biases, int[] jointVertexStarts, int[] jointVertices) {
             this.texture = texture;
-            this.vertices = vertices;
-            this.triangles = triangles;
+            this.bind = bind;
+            this.quads = quads;
+            this.bucketStarts = bucketStarts;
+            this.bucketWidths = bucketWidths;
+            this.bucketInfluences = bucketInfluences;
+            this.bucketJoints = bucketJoints;
+            this.staticBuckets = staticBuckets;
+            this.staticJoints = staticJoints;
+            this.jointIndices = jointIndices;
+            this.biases = biases;
+            this.jointVertexStarts = jointVertexStarts;
+            this.jointVertices = jointVertices;
         }
 
-        public Vector3f getFaceNormal(int index) {
-            int i1 = triangles.get(index);
-            int i2 = triangles.get(index + 1);
-            int i3 = triangles.get(index + 2);
-            Vector3f v1 = vertices.get(i1).pos;
-            Vector3f v2 = vertices.get(i2).pos;
-            Vector3f v3 = vertices.get(i3).pos;
-
-            Vector3f normal = new Vector3f(v3.x, v3.y, v3.z);
-            Vector3f n1 = new Vector3f(v2.x, v2.y, v2.z);
-            normal.sub(v1);
-            n1.sub(v1);
-            normal.cross(normal, n1);
-            normal.normalize();
-            return normal;
+        @Override
+        public int getVertexCount() {
+            return bucketStarts[bucketStarts.length - 1];
         }
 
-        public WrappedMesh bake(Function<WrappedJoint, Matrix4f> animator)
-        {
-            ImmutableList.Builder<WrappedVertex> builder = ImmutableList.builder();
-            for(WrappedVertex v : vertices)
-            {
-                builder.add(v.bake(animator));
-            }
-            return new WrappedMesh(this.texture, builder.build(), this.triangles);
+        public float getU(int vertex) {
+            return bind[vertex * MD5Skinning.BIND_STRIDE + MD5Skinning.UV];
         }
-    }
 
-    private static final class WrappedVertex {
-        private final Vector3f pos;
-        private final Vector3f norm;
-        private final Vector2f texCoords;
-        private final ImmutableList<WrappedJoint> joints;
-        private final ImmutableList<Float> biases;
+        public float getV(int vertex) {
+            return bind[vertex * MD5Skinning.BIND_STRIDE + MD5Skinning.UV + 1];
+        }
 
-        public WrappedVertex(Vector3f pos, Vector3f norm, Vector2f texCoords,
-                             ImmutableList<WrappedJoint> joints, ImmutableList<Float> biases) {
-            this.pos = pos;
-            this.norm = norm;
-            this.texCoords = texCoords;
-            this.joints = joints;
-            this.biases = biases;
+        // the static buckets skinned for palette, reused while the joints they use stay put
+        @Override
+        public StaticPose prepare(float[] palette) {
+            return getStaticPose(palette);
         }
 
-        public WrappedVertex bake(Function<WrappedJoint, Matrix4f> animator) {
-            Vector4f newPos = new Vector4f(0, 0, 0, 1);
-            Vector4f newNorm = new Vector4f();
+        /*
+         * Skins vertices from until to with the palette into outPositions/outNormals,
+         * three floats per vertex in the same order as the bind pose, starting at
+         * vertex outBase of the output. pose is what prepare returned for the palette.
+         */
+        @Override
+        public void skin(StaticPose pose, float[] palette, float[] outPositions, @Nullable float[] outNormals, int outBase, int from, int to) {
+            int staticEnd = bucketStarts[staticBuckets];
+            if(from < staticEnd) {
+                int end = Math.min(to, staticEnd);
+                System.arraycopy(pose.positions, from * 3, outPositions, (outBase + from) * 3, (end - from) * 3);
+                if(outNormals != null) System.arraycopy(pose.normals, from * 3, outNormals, (outBase + from) * 3, (end - from) * 3);
+            }
+            skinBuckets(staticBuckets, bucketWidths.length, palette, outPositions, outNormals, outBase, from, to);
+        }
+
+        /*
+         * Skins again only the vertices influenced by the changed joints, leaving the
+         * rest of the output as it was. dirty is scratch space.
+         */
+        public void skinChanged(BitSet changed, BitSet dirty, float[] palette, float[] outPositions, @Nullable float[] outNormals, int outBase) {
+            dirty.clear();
+            int jointCount = jointVertexStarts.length - 1;
+            for(int j = changed.nextSetBit(0) ; j >= 0 && j < jointCount ; j = changed.nextSetBit(j + 1)) {
+                for(int k = jointVertexStarts[j] ; k < jointVertexStarts[j + 1] ; ++k) dirty.set(jointVertices[k]);
+            }
+            for(int from = dirty.nextSetBit(0) ; from >= 0 ; from = dirty.nextSetBit(from)) {
+                int to = dirty.nextClearBit(from);
+                skinBuckets(0, bucketWidths.length, palette, outPositions, outNormals, outBase, from, to);
+                from = to;
+            }
+        }
 
-            //this isnt working
-            for(int i = 0 ; i < joints.size() ; ++i) {
-                Matrix4f m = animator.apply(joints.get(i));
+        private void skinBuckets(int first, int last, float[] palette, float[] outPositions, @Nullable float[] outNormals,
+                                 int outBase, int from, int to) {
+            // start at the bucket holding from, small ranges shouldn't walk every bucket
+            int b = Arrays.binarySearch(bucketStarts, first, last, from);
+            b = Math.max(first, b < 0 ? -b - 2 : b);
+            for( ; b < last && bucketStarts[b] < to ; ++b) {
+                int start = Math.max(from, bucketStarts[b]);
+                int end = Math.min(to, bucketStarts[b + 1]);
+                if(start >= end) continue;
+                if(bucketJoints[b] >= 0) {
+                    MD5Skinning.skinRigid(bind, bucketJoints[b], palette, outPositions, outNormals, outBase, start, end);
+                }
+                else {
+                    MD5Skinning.skinBucket(bind, jointIndices, biases, bucketWidths[b], bucketInfluences[b], bucketStarts[b],
+                            palette, outPositions, outNormals, outBase, start, end);
+                }
+            }
+        }
 
-                Vector4f tmpPos = new Vector4f(this.pos);
-                tmpPos.w = 1;
+        // skins the static buckets again only when the palette entries they use have changed
+        private StaticPose getStaticPose(float[] palette) {
+            StaticPose pose = staticPose;
+            if(pose != null && pose.matches(staticJoints, palette)) return pose;
 
-                m.transform(tmpPos);
-                tmpPos.scale(biases.get(i));
-                newPos.add(tmpPos);
+            int count = bucketStarts[staticBuckets];
+            pose = new StaticPose(staticJoints, palette, new float[count * 3], new float[count * 3]);
+            skinBuckets(0, staticBuckets, palette, pose.positions, pose.normals, 0, 0, count);
+            staticPose = pose;
+            return pose;
+        }
+    }
 
-                Vector4f tmpNorm = new Vector4f(this.norm);
+    private static final class StaticPose {
+        private final float[] key;
+        private final float[] positions;
+        private final float[] normals;
 
-                m.transform(tmpNorm);
-                tmpNorm.scale(biases.get(i));
-                newNorm.add(tmpNorm);
+        private StaticPose(int[] joints, float[] palette, float[] positions, float[] normals) {
+            this.key = new float[joints.length * MD5Skinning.MATRIX_SIZE];
+            for(int i = 0 ; i < joints.length ; ++i) {
+                System.arraycopy(palette, joints[i] * MD5Skinning.MATRIX_SIZE, key, i * MD5Skinning.MATRIX_SIZE, MD5Skinning.MATRIX_SIZE);
             }
-
-            Vector3f ret = new Vector3f(newNorm.x, newNorm.y, newNorm.z);
-            ret.normalize();
-            return new WrappedVertex(new Vector3f(newPos.x, newPos.y, newPos.z),
-                    ret, this.texCoords, this.joints, this.biases);
+            this.positions = positions;
+            this.normals = normals;
         }
 
-        public String toString() {
-            return "vertex data: " + " " + pos.toString() + " " + norm.toString() + " " + texCoords.toString();
+        private boolean matches(int[] joints, float[] palette) {
+            for(int i = 0 ; i < joints.length ; ++i) {
+                int o = joints[i] * MD5Skinning.MATRIX_SIZE;
+                int k = i * MD5Skinning.MATRIX_SIZE;
+                for(int e = 0 ; e < MD5Skinning.MATRIX_SIZE ; ++e) {
+                    if(Float.compare(palette[o + e], key[k + e]) != 0) return false;
+                }
+            }
+            return true;
         }
     }
 
@@ -773,36 +1209,366 @@ public enum MD5Loader implements ICustomModelLoader {
         }
     }
 
+    /*
+     * Frames of one animation skinned at load time. Only plain MD5States of that
+     * animation can be answered from them; anything else skins live.
+     */
+    private static final class PrebakedFrames {
+        private final Animation animation;
+        private final MD5FrameStore store;
+
+        private PrebakedFrames(Animation animation, MD5FrameStore store) {
+            this.animation = animation;
+            this.store = store;
+        }
+
+        private boolean covers(IModelState state) {
+            if(!(state instanceof MD5State)) return false;
+            MD5State md5State = (MD5State) state;
+            return md5State.getAnimation() == animation && md5State.getParent() == null
+                    && store.contains(md5State.getFrame()) && store.contains(md5State.getNextFrame());
+        }
+
+        private void sample(IModelState state, float[] positions, @Nullable float[] normals) {
+            MD5State md5State = (MD5State) state;
+            store.sample(md5State.getFrame(), md5State.getNextFrame(), md5State.getProgress(), positions, normals);
+        }
+    }
+
+    /*
+     * How an animated item is drawn in each camera transform. FULL animates it as
+     * usual, REDUCED only steps to every reducedRate-th frame, FROZEN always shows one
+     * frame and BIND the unanimated bind pose; the last two are skinned once per bake
+     * and ignore joint overrides. Every transform is FULL unless the model's custom
+     * data says otherwise.
+     */
+    private static final class PerspectivePolicy {
+        enum Mode { FULL, REDUCED, FROZEN, BIND }
+
+        private static final PerspectivePolicy FULL = new PerspectivePolicy(new EnumMap<>(ItemCameraTransforms.TransformType.class), 0, 1);
+        private static final PerspectivePolicy DEFAULT = new PerspectivePolicy(new EnumMap<>(ItemCameraTransforms.TransformType.class), 0, 4);
+        // what a stack without a holder can be drawn as: dropped, in an item frame or in a gui
+        private static final ItemCameraTransforms.TransformType[] UNHELD = {
+                ItemCameraTransforms.TransformType.GUI, ItemCameraTransforms.TransformType.GROUND, ItemCameraTransforms.TransformType.FIXED
+        };
+
+        private final EnumMap<ItemCameraTransforms.TransformType, Mode> modes;
+        private final int frozenFrame;
+        private final int reducedRate;
+
+        private PerspectivePolicy(EnumMap<ItemCameraTransforms.TransformType, Mode> modes, int frozenFrame, int reducedRate) {
+            this.modes = modes;
+            this.frozenFrame = frozenFrame;
+            this.reducedRate = Math.max(1, reducedRate);
+        }
+
+        private Mode getMode(ItemCameraTransforms.TransformType type) {
+            Mode mode = modes.get(type);
+            return mode == null ? Mode.FULL : mode;
+        }
+
+        private boolean uses(Mode mode) {
+            return modes.containsValue(mode);
+        }
+
+        // whether a perspective the stack may show up in follows the animation
+        private boolean animates(boolean held) {
+            for(ItemCameraTransforms.TransformType type : held ? ItemCameraTransforms.TransformType.values() : UNHELD) {
+                Mode mode = getMode(type);
+                if(mode == Mode.FULL || mode == Mode.REDUCED) return true;
+            }
+            return false;
+        }
+
+        private int getFrozenFrame(int frameCount) {
+            return frameCount <= 0 ? 0 : Math.min(frozenFrame, frameCount - 1);
+        }
+
+        private int getReducedRate() {
+            return reducedRate;
+        }
+
+        /*
+         * "perspectivePolicy" lists the transforms that aren't FULL, like
+         * "gui=bind,fixed=frozen,third_person_right_hand=reduced"; "perspectiveFrozenFrame"
+         * is the frame FROZEN shows and "perspectiveReducedRate" how many frames REDUCED
+         * holds each pose.
+         */
+        private static PerspectivePolicy parse(ImmutableMap<String, String> customData, ResourceLocation modelLocation) {
+            EnumMap<ItemCameraTransforms.TransformType, Mode> modes = new EnumMap<>(DEFAULT.modes);
+            String policyData = ModelWrapper.unquote(customData.get("perspectivePolicy"));
+            if(policyData != null) {
+                for(String entry : policyData.split(",")) {
+                    String[] pair = entry.split("=");
+                    try {
+                        if(pair.length != 2) throw new IllegalArgumentException(entry);
+                        modes.put(ItemCameraTransforms.TransformType.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)),
+                                Mode.valueOf(pair[1].trim().toUpperCase(Locale.ROOT)));
+                    }
+                    catch (IllegalArgumentException e) {
+                        Mcmd5.logger.log(Level.WARN, "invalid perspectivePolicy entry '" + entry + "' for md5 model " + modelLocation);
+                    }
+                }
+            }
+            int frozenFrame = parseInt(customData, "perspectiveFrozenFrame", DEFAULT.frozenFrame, modelLocation);
+            int reducedRate = parseInt(customData, "perspectiveReducedRate", DEFAULT.reducedRate, modelLocation);
+            return new PerspectivePolicy(modes, Math.max(0, frozenFrame), reducedRate);
+        }
+
+        private static int parseInt(ImmutableMap<String, String> customData, String key, int fallback, ResourceLocation modelLocation) {
+            String data = ModelWrapper.unquote(customData.get(key));
+            if(data == null) return fallback;
+            try {
+                return Integer.parseInt(data);
+            }
+            catch (NumberFormatException e) {
+                Mcmd5.logger.log(Level.WARN, "invalid " + key + " '" + data + "' for md5 model " + modelLocation);
+                return fallback;
+            }
+        }
+    }
+
+    /*
+     * The pose independent part of a mesh's quads for one bake: its sprite and, for
+     * every quad, the packed vertex data with color and atlas UVs already written.
+     */
+    private static final class QuadTemplate {
+        private final TextureAtlasSprite sprite;
+        private final int[] data;
+        private final int quadSize;
+
+        private QuadTemplate(WrappedMesh mesh, TextureAtlasSprite sprite, MD5QuadEncoder encoder) {
+            this.sprite = sprite;
+            this.quadSize = encoder.getQuadSize();
+            this.data = new int[mesh.quads.length / 4 * quadSize];
+            float[] uvs = new float[8];
+            for(int i = 0 ; i < mesh.quads.length - 3 ; i += 4) {
+                for(int c = 0 ; c < 4 ; ++c) {
+                    int vertex = mesh.quads[i + c];
+                    uvs[c * 2] = sprite.getInterpolatedU(mesh.getU(vertex) * 16);
+                    uvs[c * 2 + 1] = sprite.getInterpolatedV(mesh.getV(vertex) * 16);
+                }
+                encoder.prepare(data, i / 4 * quadSize, uvs, sprite);
+            }
+        }
+    }
+
+    /*
+     * Quads split the way getQuads asks for them. A quad lying on a face of the block
+     * and facing out of it goes under that side, so chunk meshing can cull it against
+     * the neighbour there; everything else goes under null. Every list keeps its quads
+     * in mesh order, so the quads of one mesh are a sublist and hiding meshes only
+     * means leaving their sublists out.
+     */
+    private static final class SidedQuads {
+        // how far off the block boundary a corner may be and still count as on it
+        private static final float EPSILON = 1e-4F;
+        // index of the list under null, sides use their ordinal
+        private static final int GENERAL = EnumFacing.values().length;
+
+        private final ImmutableList<ImmutableList<BakedQuad>> lists;
+        // per list the first quad of every mesh, then the size of the list
+        private final int[][] starts;
+        // lists with meshes left out, by list index and hidden meshes
+        private final Map<Pair<Integer, BitSet>, ImmutableList<BakedQuad>> masked = new ConcurrentHashMap<>();
+
+        // all quads unculled, starts giving the first quad of every mesh in general
+        private SidedQuads(ImmutableList<BakedQuad> general, int[] generalStarts) {
+            ImmutableList.Builder<ImmutableList<BakedQuad>> lists = ImmutableList.builder();
+            this.starts = new int[GENERAL + 1][];
+            for(int i = 0 ; i < GENERAL ; ++i) {
+                lists.add(ImmutableList.of());
+                starts[i] = new int[generalStarts.length];
+            }
+            this.lists = lists.add(general).build();
+            starts[GENERAL] = generalStarts;
+        }
+
+        private SidedQuads(ImmutableList<ImmutableList<BakedQuad>> lists, int[][] starts) {
+            this.lists = lists;
+            this.starts = starts;
+        }
+
+        // rough bytes taken by the quads, their vertex data and the lists
+        private int getWeight() {
+            long weight = 0;
+            for(ImmutableList<BakedQuad> quads : lists) weight += weigh(quads);
+            return (int) Math.min(Integer.MAX_VALUE, weight);
+        }
+
+        private static long weigh(ImmutableList<BakedQuad> quads) {
+            // list header, then per quad a reference, the object and its int[]
+            long weight = 16;
+            for(BakedQuad quad : quads) weight += 4 + 32 + 16 + quad.getVertexData().length * 4L;
+            return weight;
+        }
+
+        private ImmutableList<BakedQuad> getGeneral() {
+            return lists.get(GENERAL);
+        }
+
+        // the quads under side without the meshes set in hidden
+        private ImmutableList<BakedQuad> get(@Nullable EnumFacing side, @Nullable BitSet hidden) {
+            int index = side == null ? GENERAL : side.ordinal();
+            ImmutableList<BakedQuad> quads = lists.get(index);
+            if(hidden == null || quads.isEmpty()) return quads;
+            return masked.computeIfAbsent(Pair.of(index, hidden), key -> {
+                int[] at = starts[index];
+                ImmutableList.Builder<BakedQuad> builder = ImmutableList.builder();
+                for(int m = 0 ; m < at.length - 1 ; ++m) {
+                    if(!hidden.get(m)) builder.addAll(quads.subList(at[m], at[m + 1]));
+                }
+                return builder.build();
+            });
+        }
+
+        // the quads keep accepts, still split by side and mesh
+        private SidedQuads filter(Predicate<BakedQuad> keep) {
+            ImmutableList.Builder<ImmutableList<BakedQuad>> filtered = ImmutableList.builder();
+            int[][] filteredStarts = new int[lists.size()][];
+            for(int i = 0 ; i < lists.size() ; ++i) {
+                ImmutableList<BakedQuad> quads = lists.get(i);
+                int[] at = starts[i];
+                int[] kept = new int[at.length];
+                ImmutableList.Builder<BakedQuad> builder = ImmutableList.builder();
+                int count = 0;
+                for(int m = 0 ; m < at.length - 1 ; ++m) {
+                    kept[m] = count;
+                    for(int q = at[m] ; q < at[m + 1] ; ++q) {
+                        if(!keep.test(quads.get(q))) continue;
+                        builder.add(quads.get(q));
+                        ++count;
+                    }
+                }
+                kept[at.length - 1] = count;
+                filtered.add(builder.build());
+                filteredStarts[i] = kept;
+            }
+            return new SidedQuads(filtered.build(), filteredStarts);
+        }
+
+        // the side a quad with these corners can be culled on, null if none
+        @Nullable
+        private static EnumFacing getCullFace(float[] positions, int[] corners, EnumFacing face) {
+            float plane = face.getAxisDirection() == EnumFacing.AxisDirection.POSITIVE ? 1 : 0;
+            int axis = face.getAxis().ordinal();
+            for(int corner : corners) {
+                if(Math.abs(positions[corner + axis] - plane) > EPSILON) return null;
+            }
+            return face;
+        }
+
+        // takes the quads mesh by mesh
+        private static final class Builder {
+            private final boolean bySide;
+            private final List<ImmutableList.Builder<BakedQuad>> lists = new ArrayList<>();
+            // quads per list and mesh
+            private final int[][] counts;
+
+            // without bySide every quad goes under null
+            private Builder(boolean bySide, int meshCount) {
+                this.bySide = bySide;
+                this.counts = new int[GENERAL + 1][meshCount];
+                for(int i = 0 ; i <= GENERAL ; ++i) lists.add(ImmutableList.builder());
+            }
+
+            private void add(BakedQuad quad, float[] positions, int[] corners, int mesh) {
+                EnumFacing side = bySide ? getCullFace(positions, corners, quad.getFace()) : null;
+                int index = side == null ? GENERAL : side.ordinal();
+                lists.get(index).add(quad);
+                ++counts[index][mesh];
+            }
+
+            private SidedQuads build() {
+                ImmutableList.Builder<ImmutableList<BakedQuad>> built = ImmutableList.builder();
+                int[][] starts = new int[counts.length][];
+                for(int i = 0 ; i < counts.length ; ++i) {
+                    built.add(lists.get(i).build());
+                    starts[i] = new int[counts[i].length + 1];
+                    for(int m = 0 ; m < counts[i].length ; ++m) starts[i][m + 1] = starts[i][m] + counts[i][m];
+                }
+                return new SidedQuads(built.build(), starts);
+            }
+        }
+    }
+
     private static final class BakedWrapper implements IBakedModel {
         private final ImmutableList<WrappedMesh> meshes;
+        @Nullable
+        private final ImmutableList<WrappedJoint> joints;
         private final IModelState state;
         private final boolean smooth;
         private final boolean gui3d;
         private final VertexFormat format;
         private final ImmutableMap<String, TextureAtlasSprite> textures;
-        private ImmutableList<BakedQuad> quads;
+        private SidedQuads quads;
         private ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> transforms;
-        private final LoadingCache<IModelState, List<BakedQuad>> quadcache = CacheBuilder.newBuilder()
-                .maximumSize(32)
-                .build(new CacheLoader<IModelState, List<BakedQuad>>()
-                {
-                    @Override
-                    public ImmutableList<BakedQuad> load(IModelState modelState) throws Exception
-                    {
-                        ImmutableList.Builder<BakedQuad> quadBuilder = ImmutableList.builder();
-                        generateQuads(quadBuilder, meshes, modelState, ImmutableList.of());
-                        return  quadBuilder.build();
-                    }
-                });
+        // first output vertex of each mesh when all meshes are skinned into one buffer
+        private final int[] meshBases;
+        private final int vertexCount;
+        private final int quadCount;
+        // first quad of every mesh, then quadCount, in a list of all quads
+        private final int[] quadStarts;
+        @Nullable
+        private final PrebakedFrames frames;
+        // packs quads for the format, shared by every model using it
+        private final MD5QuadEncoder encoder;
+        private final boolean hasNormals;
+        // one per mesh, shared by every model derived from this bake
+        private final ImmutableList<QuadTemplate> templates;
+        // parent index, bind pose and unquoted name of every joint, resolved the first time overrides are applied
+        private int[] jointParents;
+        private float[] jointBindPoses;
+        private volatile String[] jointNames;
+        // models handed out by handleItemState in the current render frame
+        private final Map<Object, BakedWrapper> derived = new ConcurrentHashMap<>();
+        private volatile long derivedEpoch = -1;
+        private final PerspectivePolicy policy;
+        // the frozen frame and the bind pose, skinned at bake when the policy draws them
+        @Nullable
+        private BakedWrapper frozen;
+        @Nullable
+        private BakedWrapper bindPose;
+        // REDUCED models by state, made at bake when the policy uses them and shared with every derived model
+        @Nullable
+        private Map<MD5State, BakedWrapper> reducedModels;
+        // whether the quads stay as they are, so back facing ones can be culled per perspective
+        private boolean fixed;
+        // this model without the quads facing away in each perspective
+        private final Map<ItemCameraTransforms.TransformType, BakedWrapper> culled = new ConcurrentHashMap<>();
+        // joint overrides the quads of this model are skinned with, set by derive before the model is handed out
+        private ImmutableMap<String, TRSRTransformation> overrides = ImmutableMap.of();
+        // meshes left out of getQuads, null shows them all
+        @Nullable
+        private BitSet hidden;
+        // this model with other meshes hidden
+        private final Map<BitSet, BakedWrapper> masks = new ConcurrentHashMap<>();
 
-        public BakedWrapper(ImmutableList<WrappedMesh> meshes, IModelState state,
+        public BakedWrapper(ImmutableList<WrappedMesh> meshes, @Nullable ImmutableList<WrappedJoint> joints, IModelState state,
                             boolean smooth, boolean gui3d, VertexFormat format, ImmutableMap<String, TextureAtlasSprite> textures,
-                            ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> transforms) {
+                            ImmutableMap<ItemCameraTransforms.TransformType, TRSRTransformation> transforms,
+                            @Nullable PrebakedFrames frames, ImmutableList<QuadTemplate> templates, PerspectivePolicy policy) {
             this.meshes = meshes;
+            this.policy = policy;
+            this.templates = templates;
+            this.frames = frames;
+            this.joints = joints;
             this.state = state;
+            this.meshBases = new int[meshes.size()];
+            int vertices = 0;
+            for(int i = 0 ; i < meshes.size() ; ++i) {
+                meshBases[i] = vertices;
+                vertices += meshes.get(i).getVertexCount();
+            }
+            this.vertexCount = vertices;
+            this.quadStarts = new int[meshes.size() + 1];
+            for(int i = 0 ; i < meshes.size() ; ++i) quadStarts[i + 1] = quadStarts[i] + meshes.get(i).quads.length / 4;
+            this.quadCount = quadStarts[meshes.size()];
             this.smooth = smooth;
             this.gui3d = gui3d;
             this.format = format;
+            this.encoder = MD5QuadEncoder.get(format);
+            this.hasNormals = encoder.hasNormals();
             this.textures = textures;
             this.transforms = transforms;
         }
@@ -810,8 +1576,9 @@ public enum MD5Loader implements ICustomModelLoader {
         @Override
         public List<BakedQuad> getQuads(@Nullable IBlockState state, @Nullable EnumFacing side, long rand)
         {
-            if(side != null) return ImmutableList.of();
             IModelState modelState = this.state;
+            // equal for equal states, null when the state only compares by identity
+            Object cacheKey = null;
             if(state instanceof IExtendedBlockState)
             {
                 IExtendedBlockState exState = (IExtendedBlockState)state;
@@ -826,115 +1593,522 @@ public enum MD5Loader implements ICustomModelLoader {
                     IModelState newState = exState.getValue(Properties.AnimationProperty);
                     if(newState != null)
                     {
+                        Object newKey = newState instanceof MD5State ? getStateKey(newState) : null;
                         if (parent == null)
                         {
                             modelState = newState;
+                            cacheKey = newKey;
                         }
                         else
                         {
+                            // parent is this bake's own, the same instance on every call
                             modelState = new ModelStateComposition(parent, newState);
+                            cacheKey = newKey == null ? null : Arrays.asList(parent, newKey);
                         }
                     }
                 }
             }
             if(quads == null)
             {
-                ImmutableList.Builder<BakedQuad> builder = ImmutableList.builder();
-                generateQuads(builder, meshes, this.state, ImmutableList.of());
-                quads = builder.build();
+                quads = generateSidedQuads(this.state, overrides);
             }
             if(this.state != modelState)
             {
                 /*ImmutableList.Builder<BakedQuad> builder = ImmutableList.builder();
                 generateQuads(builder, meshes, modelState, ImmutableList.of());
                 return builder.build();*/
-                return quadcache.getUnchecked(modelState);
+                return getCachedQuads(modelState, cacheKey).get(side, hidden);
             }
-            return quads;
+            return quads.get(side, hidden);
         }
 
-        private void generateQuads(ImmutableList.Builder<BakedQuad> builder, ImmutableList<WrappedMesh> meshes, final IModelState state, ImmutableList<String> path)
+        /*
+         * derive, reusing the model made for the same key earlier in this render frame
+         * so every stack drawn in that state shares one set of quads. The key has to
+         * tell apart everything the model is made from, overrides included. quads are
+         * only asked for when there is no such model yet.
+         */
+        private BakedWrapper deriveCached(Object key, IModelState state, @Nullable Supplier<ImmutableList<BakedQuad>> quads,
+                                          ImmutableMap<String, TRSRTransformation> overrides)
         {
-            for(WrappedMesh mesh : meshes) {
-                // currently does nothing to the mesh since animation handling is not currently working
+            long epoch = MD5Pipeline.INSTANCE.getRenderFrames();
+            if(epoch != derivedEpoch) {
+                derived.clear();
+                derivedEpoch = epoch;
+            }
+            BakedWrapper wrapper = derived.get(key);
+            if(wrapper == null) {
+                wrapper = derive(state, quads == null ? null : quads.get(), overrides);
+                BakedWrapper raced = derived.putIfAbsent(key, wrapper);
+                if(raced != null) wrapper = raced;
+            }
+            return wrapper;
+        }
 
-                WrappedMesh animMesh = mesh.bake(new Function<WrappedJoint, Matrix4f>()
-                {
-                    private final TRSRTransformation global = TRSRTransformation.identity();
-                    //state.apply(Optional.empty()).orElse(TRSRTransformation.identity());
-                    private final LoadingCache<WrappedJoint, TRSRTransformation> localCache = CacheBuilder.newBuilder()
-                            .maximumSize(32)
-                            .build(new CacheLoader<WrappedJoint, TRSRTransformation>()
-                            {
-                                @Override
-                                public TRSRTransformation load(WrappedJoint j) throws Exception
-                                {
-                                    return state.apply(Optional.of(j)).orElse(TRSRTransformation.identity());
-                                }
-                            });
-                    
-                    @Override
-                    public Matrix4f apply(WrappedJoint j)
-                    {
-                        return localCache.getUnchecked(j).getMatrix();
+        /*
+         * A model for another state and overrides sharing everything else, with its quads
+         * if they are already known.
+         */
+        private BakedWrapper derive(IModelState state, @Nullable ImmutableList<BakedQuad> quads,
+                                    ImmutableMap<String, TRSRTransformation> overrides)
+        {
+            BakedWrapper wrapper = new BakedWrapper(meshes, joints, state, true, true, format, textures, transforms, frames,
+                    templates, policy);
+            wrapper.frozen = frozen;
+            wrapper.bindPose = bindPose;
+            wrapper.reducedModels = reducedModels;
+            wrapper.overrides = overrides;
+            // handed over quads are drawn as they are, unculled
+            wrapper.quads = quads == null ? null : new SidedQuads(quads, quadStarts);
+            return wrapper;
+        }
+
+        /*
+         * This model with the meshes set in hidden left out, sharing its quads and what
+         * the policy draws. Never changes hidden afterwards.
+         */
+        private BakedWrapper mask(BitSet hidden)
+        {
+            if(hidden.isEmpty() || hidden.equals(this.hidden)) return this;
+            BakedWrapper wrapper = masks.get(hidden);
+            if(wrapper == null) {
+                if(quads == null) quads = generateSidedQuads(state, overrides);
+                wrapper = derive(state, null, overrides);
+                wrapper.quads = quads;
+                wrapper.fixed = fixed;
+                wrapper.hidden = hidden;
+                BakedWrapper raced = masks.putIfAbsent(hidden, wrapper);
+                if(raced != null) wrapper = raced;
+            }
+            return wrapper;
+        }
+
+        // indices of the meshes whose shader the visibility hides
+        private BitSet getHiddenMeshes(@Nullable MD5MeshVisibility visibility)
+        {
+            BitSet hidden = new BitSet(meshes.size());
+            if(visibility == null || visibility.isEmpty()) return hidden;
+            for(int m = 0 ; m < meshes.size() ; ++m) {
+                if(!visibility.isVisible(meshes.get(m).texture)) hidden.set(m);
+            }
+            return hidden;
+        }
+
+        // a model always drawn with the given quads, whatever the perspective
+        private BakedWrapper fix(IModelState state, SidedQuads quads)
+        {
+            BakedWrapper wrapper = new BakedWrapper(meshes, joints, state, true, true, format, textures, transforms, frames,
+                    templates, PerspectivePolicy.FULL);
+            wrapper.quads = quads;
+            return wrapper;
+        }
+
+        // skins the poses the policy draws without animation, once for the bake
+        private void bakePolicyPoses()
+        {
+            if(!(state instanceof MD5State) || ((MD5State) state).getAnimation() == null) return;
+            MD5State md5State = (MD5State) state;
+            if(policy.uses(PerspectivePolicy.Mode.REDUCED)) reducedModels = new ConcurrentHashMap<>();
+            if(policy.uses(PerspectivePolicy.Mode.FROZEN)) {
+                int frame = policy.getFrozenFrame(md5State.getAnimation().getFrames());
+                MD5State frozenState = new MD5State(md5State.getAnimation(), frame, md5State);
+                frozen = fix(frozenState, generateSidedQuads(frozenState, ImmutableMap.of()));
+                frozen.fixed = true;
+            }
+            if(policy.uses(PerspectivePolicy.Mode.BIND)) {
+                MD5State bindState = new MD5State(null, 0, md5State);
+                bindPose = fix(bindState, generateSidedQuads(bindState, ImmutableMap.of()));
+                bindPose.fixed = true;
+            }
+        }
+
+        // this model with its animation only stepping every reducedRate frames
+        private BakedWrapper reduce()
+        {
+            if(!(state instanceof MD5State) || ((MD5State) state).getAnimation() == null) return this;
+            MD5State md5State = (MD5State) state;
+            int frame = md5State.getFrame() - Math.floorMod(md5State.getFrame(), policy.getReducedRate());
+            MD5State reduced = new MD5State(md5State.getAnimation(), frame, md5State);
+            // only a model baked without REDUCED in its policy has none, and it never gets here
+            if(reducedModels == null) return fix(reduced, getCachedQuads(reduced, getStateKey(reduced)));
+            BakedWrapper wrapper = reducedModels.get(reduced);
+            if(wrapper == null) {
+                wrapper = fix(reduced, getCachedQuads(reduced, getStateKey(reduced)));
+                BakedWrapper raced = reducedModels.putIfAbsent(reduced, wrapper);
+                if(raced != null) wrapper = raced;
+            }
+            return wrapper;
+        }
+
+        /*
+         * This model without the quads that can't face the camera in the perspective,
+         * made the first time it is asked for. Only fixed models are culled, the quads
+         * of the others change from frame to frame.
+         */
+        private BakedWrapper cull(ItemCameraTransforms.TransformType type)
+        {
+            float angle;
+            switch(type) {
+                case GUI:
+                    angle = guiCullAngle;
+                    break;
+                case FIRST_PERSON_LEFT_HAND:
+                case FIRST_PERSON_RIGHT_HAND:
+                    angle = firstPersonCullAngle;
+                    break;
+                case FIXED:
+                    angle = fixedCullAngle;
+                    break;
+                default:
+                    return this;
+            }
+            if(!fixed || angle < 0 || angle >= 90 || !encoder.hasFloatPositions()) return this;
+            BakedWrapper wrapper = culled.get(type);
+            if(wrapper == null) {
+                if(quads == null) quads = generateSidedQuads(state, overrides);
+                TRSRTransformation transform = transforms.get(type);
+                wrapper = fix(state, cullBackFaces(quads, transform == null ? TRSRTransformation.identity() : transform, angle));
+                BakedWrapper raced = culled.putIfAbsent(type, wrapper);
+                if(raced != null) wrapper = raced;
+            }
+            return wrapper;
+        }
+
+        /*
+         * Drops the quads both of whose triangles point more than 90 + angle degrees
+         * away from the viewer, who looks down -z once transform is applied.
+         */
+        private SidedQuads cullBackFaces(SidedQuads quads, TRSRTransformation transform, float angle)
+        {
+            // the direction towards the viewer in model space: normals n face it when n . (M^-1 z) > 0
+            Matrix3f m = new Matrix3f();
+            transform.getMatrix().getRotationScale(m);
+            Vector3f view = new Vector3f(0, 0, 1);
+            if(Math.abs(m.determinant()) > 1e-12) {
+                m.invert();
+                m.transform(view);
+            }
+            view.normalize();
+            float limit = -(float) Math.sin(Math.toRadians(angle)) - 1e-4F;
+
+            float[][] corners = new float[4][3];
+            return quads.filter(quad -> {
+                for(int v = 0 ; v < 4 ; ++v) encoder.readPosition(quad.getVertexData(), v, corners[v]);
+                return facesViewer(corners[0], corners[1], corners[2], view, limit)
+                        || facesViewer(corners[0], corners[2], corners[3], view, limit);
+            });
+        }
+
+        // normal as in getFacing, against the cosine limit
+        private static boolean facesViewer(float[] a, float[] b, float[] c, Vector3f view, float limit)
+        {
+            float e1x = c[0] - a[0], e1y = c[1] - a[1], e1z = c[2] - a[2];
+            float e2x = b[0] - a[0], e2y = b[1] - a[1], e2z = b[2] - a[2];
+            float nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+            float len = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            // degenerate halves, like the repeated corner of an unpaired triangle, never cull
+            if(len < 1e-12f) return false;
+            return (nx * view.x + ny * view.y + nz * view.z) / len >= limit;
+        }
+
+        private SidedQuads generateSidedQuads(IModelState modelState, ImmutableMap<String, TRSRTransformation> overrides)
+        {
+            SidedQuads.Builder builder = new SidedQuads.Builder(true, meshes.size());
+            generateQuads(builder, null, meshes, modelState, ImmutableList.of(), null, overrides);
+            return builder.build();
+        }
+
+        /*
+         * Owned by the templates, which every model derived from this bake shares. A
+         * state without a key would never be hit again, so it is skinned without
+         * going through the cache.
+         */
+        private SidedQuads getCachedQuads(IModelState modelState, @Nullable Object key)
+        {
+            if(key == null) return generateSidedQuads(modelState, ImmutableMap.of());
+            return MD5QuadCache.INSTANCE.get(templates, key, () -> generateSidedQuads(modelState, ImmutableMap.of()), SidedQuads::getWeight);
+        }
+
+        private ImmutableList<BakedQuad> skinQuads(IModelState state, @Nullable MD5Skinning.Incremental incremental,
+                                                   ImmutableMap<String, TRSRTransformation> overrides, @Nullable MD5QuadPool pool)
+        {
+            if(pool != null) {
+                pool.begin(quadCount);
+                generateQuads(null, pool, meshes, state, ImmutableList.of(), incremental, overrides);
+                return pool.finish();
+            }
+            SidedQuads.Builder builder = new SidedQuads.Builder(false, meshes.size());
+            generateQuads(builder, null, meshes, state, ImmutableList.of(), incremental, overrides);
+            return builder.build().getGeneral();
+        }
+
+        // skins frame into out, the way skinQuads would skin it, without making quads
+        private void skinFrame(IModelState state, MD5Skinning.Incremental incremental,
+                               ImmutableMap<String, TRSRTransformation> overrides, MD5Instance.Keyframe out)
+        {
+            MD5Skinning.Buffers buffers = MD5Skinning.Buffers.get();
+            float[] positions = skinVertices(state, incremental, overrides, buffers);
+            out.ensure(vertexCount, hasNormals);
+            System.arraycopy(positions, 0, out.positions, 0, vertexCount * 3);
+            if(hasNormals) {
+                float[] normals = positions == buffers.positions ? buffers.normals : incremental.normals;
+                System.arraycopy(normals, 0, out.normals, 0, vertexCount * 3);
+            }
+        }
+
+        // quads of the vertices progress of the way from one skinned frame to the other
+        private ImmutableList<BakedQuad> blendQuads(MD5Instance.Keyframe from, MD5Instance.Keyframe to, float progress,
+                                                    @Nullable MD5QuadPool pool)
+        {
+            MD5Skinning.Buffers buffers = MD5Skinning.Buffers.get();
+            buffers.ensure(vertexCount, 0);
+            float[] positions = buffers.positions;
+            float[] normals = hasNormals ? buffers.normals : null;
+            for(int i = 0 ; i < vertexCount * 3 ; ++i) {
+                positions[i] = from.positions[i] + (to.positions[i] - from.positions[i]) * progress;
+            }
+            if(normals != null) {
+                for(int i = 0 ; i < vertexCount * 3 ; ++i) {
+                    normals[i] = from.normals[i] + (to.normals[i] - from.normals[i]) * progress;
+                }
+            }
+            if(pool != null) {
+                pool.begin(quadCount);
+                encodeQuads(null, pool, meshes, positions, normals);
+                return pool.finish();
+            }
+            SidedQuads.Builder builder = new SidedQuads.Builder(false, meshes.size());
+            encodeQuads(builder, null, meshes, positions, normals);
+            return builder.build().getGeneral();
+        }
+
+        // what an instance of this model in the animation skins with
+        private MD5Instance.Skinner getSkinner(@Nullable Animation animation)
+        {
+            return new MD5Instance.Skinner() {
+                @Override
+                public ImmutableList<BakedQuad> skin(int frame, int nextFrame, float progress, MD5Skinning.Incremental incremental,
+                                                     ImmutableMap<String, TRSRTransformation> overrides, @Nullable MD5QuadPool pool) {
+                    return skinQuads(new MD5State(animation, frame, nextFrame, progress), incremental, overrides, pool);
+                }
+
+                @Override
+                public void skinFrame(int frame, MD5Skinning.Incremental incremental,
+                                      ImmutableMap<String, TRSRTransformation> overrides, MD5Instance.Keyframe out) {
+                    BakedWrapper.this.skinFrame(new MD5State(animation, frame), incremental, overrides, out);
+                }
+
+                @Override
+                public ImmutableList<BakedQuad> blend(MD5Instance.Keyframe from, MD5Instance.Keyframe to, float progress,
+                                                      @Nullable MD5QuadPool pool) {
+                    return blendQuads(from, to, progress, pool);
+                }
+            };
+        }
+
+        /*
+         * With an incremental skin the output persists in it between calls, and only
+         * vertices of joints that moved since the previous call are skinned again.
+         * Joint overrides need one too; if the state hasn't changed since the last call
+         * only the subtrees of the overridden joints are evaluated again. With a pool the
+         * quads go into it instead of the builder.
+         */
+        private void generateQuads(@Nullable SidedQuads.Builder builder, @Nullable MD5QuadPool pool,
+                                   ImmutableList<WrappedMesh> meshes, final IModelState state,
+                                   ImmutableList<String> path, @Nullable MD5Skinning.Incremental incremental,
+                                   ImmutableMap<String, TRSRTransformation> overrides)
+        {
+            MD5Skinning.Buffers buffers = MD5Skinning.Buffers.get();
+            float[] positions = skinVertices(state, incremental, overrides, buffers);
+            // formats without normals don't pay for skinning them
+            float[] normals = !hasNormals ? null : positions == buffers.positions ? buffers.normals : incremental.normals;
+            encodeQuads(builder, pool, meshes, positions, normals);
+        }
+
+        /*
+         * Skins the state into either the buffers or the incremental skin and returns
+         * the positions of the one it used; the normals are in the same one.
+         */
+        private float[] skinVertices(IModelState state, @Nullable MD5Skinning.Incremental incremental,
+                                     ImmutableMap<String, TRSRTransformation> overrides, MD5Skinning.Buffers buffers)
+        {
+            int jointCount = joints == null ? 0 : joints.size();
+            buffers.ensure(vertexCount, jointCount);
+            float[] positions = buffers.positions;
+            float[] normals = hasNormals ? buffers.normals : null;
+            // stored frames know nothing of overrides, those are skinned live
+            if(frames != null && frames.covers(state) && overrides.isEmpty()) {
+                frames.sample(state, positions, normals);
+                if(incremental != null) incremental.invalidate();
+            }
+            else if(incremental != null) {
+                Object key = getStateKey(state);
+                if(!incremental.restoreBase(key, buffers.palette, jointCount)) {
+                    buildPalette(joints, state, buffers.palette);
+                    incremental.storeBase(key, buffers.palette, jointCount);
+                }
+                if(!overrides.isEmpty()) applyOverrides(overrides, buffers.palette);
+                BitSet changed = incremental.update(buffers.palette, jointCount, vertexCount, hasNormals);
+                positions = incremental.positions;
+                normals = hasNormals ? incremental.normals : null;
+                if(changed == null) {
+                    MD5Skinning.skinAll(meshes, meshBases, buffers.palette, positions, normals,
+                            parallelSkinning, parallelSkinningThreshold);
+                }
+                else {
+                    for(int m = 0 ; m < meshes.size() ; ++m) {
+                        meshes.get(m).skinChanged(changed, incremental.dirty, buffers.palette, positions, normals, meshBases[m]);
                     }
-                });
-                    
-                // triangles are stored as a one dimensional array of integers
-                // every group of three, ex 0 1 2, are the corner of a triangle
-                for(int i = 0 ; i < animMesh.triangles.size() - 2 ; i += 3) {
-                    UnpackedBakedQuad.Builder quadBuilder = new UnpackedBakedQuad.Builder(format);
-                    quadBuilder.setContractUVs(true);
-                    Vector3f faceNormal = animMesh.getFaceNormal(i);
-                    quadBuilder.setQuadOrientation(EnumFacing.getFacingFromVector(faceNormal.x, faceNormal.y, faceNormal.z));
-                    
-                    int i0 = animMesh.triangles.get(i);
-                    int i1 = animMesh.triangles.get(i + 1);
-                    int i2 = animMesh.triangles.get(i + 2);
-                    WrappedVertex v0 = animMesh.vertices.get(i0);
-                    WrappedVertex v1 = animMesh.vertices.get(i1);
-                    WrappedVertex v2 = animMesh.vertices.get(i2);
-                    
-                    TextureAtlasSprite sprite = this.textures.get(animMesh.texture);
-                    quadBuilder.setTexture(sprite);
-                    putVertexData(quadBuilder, v0.pos, v0.norm, v0.texCoords, sprite);
-                    putVertexData(quadBuilder, v1.pos, v1.norm, v1.texCoords, sprite);
-                    putVertexData(quadBuilder, v2.pos, v2.norm, v2.texCoords, sprite);
-                    putVertexData(quadBuilder, v2.pos, v2.norm, v2.texCoords, sprite);
-                    builder.add(quadBuilder.build());
-                }
-            }
-        }
-
-        private final void putVertexData(UnpackedBakedQuad.Builder builder, Vector3f pos, Vector3f faceNormal, Vector2f texCoords, TextureAtlasSprite sprite)
-        {
-            // TODO handle everything not handled (texture transformations, bones, transformations, normals, e.t.c)
-
-            for(int e = 0; e < format.getElementCount(); e++)
-            {
-                switch(format.getElement(e).getUsage())
-                {
-                    case POSITION:
-                        builder.put(e, pos.x, pos.y, pos.z, 1);
-                        break;
-                    case COLOR:
-                        builder.put(e, 1, 1, 1, 1);
-                        break;
-                    case UV:
-                            builder.put(e,
-                                    sprite.getInterpolatedU(texCoords.x * 16),
-                                    sprite.getInterpolatedV(texCoords.y * 16),
-                                    0,
-                                    1
-                            );
-                        break;
-                    case NORMAL:
-                        builder.put(e, faceNormal.x, faceNormal.y, faceNormal.z, 0);
-                        break;
-                    default:
-                        builder.put(e);
                 }
             }
+            else {
+                // one palette per state, shared by every mesh
+                buildPalette(joints, state, buffers.palette);
+                if(!overrides.isEmpty()) applyOverrides(overrides, buffers.palette);
+                MD5Skinning.skinAll(meshes, meshBases, buffers.palette, positions, normals,
+                        parallelSkinning, parallelSkinningThreshold);
+            }
+            return positions;
+        }
+
+        private void encodeQuads(@Nullable SidedQuads.Builder builder, @Nullable MD5QuadPool pool,
+                                 ImmutableList<WrappedMesh> meshes, float[] positions, @Nullable float[] normals)
+        {
+            int[] corners = new int[4];
+            int quad = 0;
+            for(int m = 0 ; m < meshes.size() ; ++m) {
+                WrappedMesh mesh = meshes.get(m);
+                QuadTemplate template = templates.get(m);
+                int base = meshBases[m];
+
+                // quads are stored as a one dimensional array of integers
+                // every group of four, ex 0 1 2 3, are the corners of a quad
+                for(int i = 0 ; i < mesh.quads.length - 3 ; i += 4) {
+                    for(int c = 0 ; c < 4 ; ++c) {
+                        corners[c] = (base + mesh.quads[i + c]) * 3;
+                    }
+                    EnumFacing face = getFacing(positions, corners[0], corners[1], corners[2]);
+                    int offset = i / 4 * template.quadSize;
+                    if(pool != null) pool.put(quad++, encoder, template.data, offset, positions, normals, corners, template.sprite, face);
+                    else builder.add(encoder.encode(template.data, offset, positions, normals, corners, template.sprite, face),
+                            positions, corners, m);
+                }
+            }
+        }
+
+        /*
+         * Resolves every joint through the state exactly once, densely indexed by
+         * joint, so the cost of posing doesn't grow with the number of meshes.
+         */
+        private static void buildPalette(@Nullable ImmutableList<WrappedJoint> joints, IModelState state, float[] palette)
+        {
+            if(joints == null) return;
+            for(int j = 0 ; j < joints.size() ; ++j) {
+                Matrix4f m = state.apply(Optional.of(joints.get(j))).orElse(TRSRTransformation.identity()).getMatrix();
+                putMatrix(m, palette, j * MD5Skinning.MATRIX_SIZE);
+            }
+        }
+
+        // equal for states that pose the joints the same way
+        private static Object getStateKey(IModelState state)
+        {
+            if(state instanceof MD5State && ((MD5State) state).getParent() == null) {
+                MD5State md5State = (MD5State) state;
+                return Arrays.asList(md5State.getAnimation(), md5State.getFrame(), md5State.getNextFrame(), md5State.getProgress());
+            }
+            return state;
+        }
+
+        /*
+         * Applies local overrides on top of the palette. With P the animated pose of
+         * joint k (its skin matrix times its bind pose), the override O turns every
+         * skin matrix S in k's subtree into P O P^-1 S, so nothing outside the
+         * subtree is touched. Parents come before children, so overrides stack.
+         */
+        private void applyOverrides(ImmutableMap<String, TRSRTransformation> overrides, float[] palette)
+        {
+            if(joints == null) return;
+            if(jointNames == null) {
+                int[] parents = new int[joints.size()];
+                float[] bindPoses = new float[joints.size() * MD5Skinning.MATRIX_SIZE];
+                String[] names = new String[joints.size()];
+                Matrix4f m = new Matrix4f();
+                for(int j = 0 ; j < joints.size() ; ++j) {
+                    Optional<? extends IJoint> parent = joints.get(j).getParent();
+                    parents[j] = parent.isPresent() ? joints.indexOf(parent.get()) : -1;
+                    m.set(joints.get(j).getInvBindPose().getMatrix());
+                    m.invert();
+                    putMatrix(m, bindPoses, j * MD5Skinning.MATRIX_SIZE);
+                    names[j] = joints.get(j).toString() == null ? "" : MD5Skeleton.unquote(joints.get(j).toString());
+                }
+                jointParents = parents;
+                jointBindPoses = bindPoses;
+                // written last, reading it non-null publishes the others
+                jointNames = names;
+            }
+            String[] names = jointNames;
+            MD5Skinning.Buffers buffers = MD5Skinning.Buffers.get();
+            // the override matrices by joint only change with the snapshot, which is kept while the overrides are unchanged
+            if(buffers.overridesFor != overrides || buffers.namesFor != names) {
+                if(buffers.overrideMatrices.length < joints.size()) buffers.overrideMatrices = new Matrix4f[joints.size()];
+                for(int j = 0 ; j < joints.size() ; ++j) {
+                    TRSRTransformation override = overrides.get(names[j]);
+                    buffers.overrideMatrices[j] = override == null ? null : override.getMatrix();
+                }
+                buffers.overridesFor = overrides;
+                buffers.namesFor = names;
+            }
+            if(buffers.subtree.length < joints.size()) buffers.subtree = new boolean[joints.size()];
+            Matrix4f pose = buffers.pose;
+            Matrix4f delta = buffers.delta;
+            Matrix4f m = buffers.matrix;
+            boolean[] subtree = buffers.subtree;
+            for(int k = 0 ; k < joints.size() ; ++k) {
+                Matrix4f override = buffers.overrideMatrices[k];
+                if(override == null) continue;
+
+                getMatrix(palette, k * MD5Skinning.MATRIX_SIZE, pose);
+                getMatrix(jointBindPoses, k * MD5Skinning.MATRIX_SIZE, m);
+                pose.mul(m);
+                delta.set(pose);
+                delta.mul(override);
+                pose.invert();
+                delta.mul(pose);
+
+                Arrays.fill(subtree, 0, joints.size(), false);
+                subtree[k] = true;
+                for(int i = k ; i < joints.size() ; ++i) {
+                    if(i > k && (jointParents[i] < 0 || !subtree[jointParents[i]])) continue;
+                    subtree[i] = true;
+                    getMatrix(palette, i * MD5Skinning.MATRIX_SIZE, m);
+                    m.mul(delta, m);
+                    putMatrix(m, palette, i * MD5Skinning.MATRIX_SIZE);
+                }
+            }
+        }
+
+        private static void getMatrix(float[] palette, int o, Matrix4f m)
+        {
+            m.m00 = palette[o]; m.m01 = palette[o + 1]; m.m02 = palette[o + 2]; m.m03 = palette[o + 3];
+            m.m10 = palette[o + 4]; m.m11 = palette[o + 5]; m.m12 = palette[o + 6]; m.m13 = palette[o + 7];
+            m.m20 = palette[o + 8]; m.m21 = palette[o + 9]; m.m22 = palette[o + 10]; m.m23 = palette[o + 11];
+            m.m30 = palette[o + 12]; m.m31 = palette[o + 13]; m.m32 = palette[o + 14]; m.m33 = palette[o + 15];
+        }
+
+        private static void putMatrix(Matrix4f m, float[] palette, int o)
+        {
+            palette[o] = m.m00; palette[o + 1] = m.m01; palette[o + 2] = m.m02; palette[o + 3] = m.m03;
+            palette[o + 4] = m.m10; palette[o + 5] = m.m11; palette[o + 6] = m.m12; palette[o + 7] = m.m13;
+            palette[o + 8] = m.m20; palette[o + 9] = m.m21; palette[o + 10] = m.m22; palette[o + 11] = m.m23;
+            palette[o + 12] = m.m30; palette[o + 13] = m.m31; palette[o + 14] = m.m32; palette[o + 15] = m.m33;
+        }
+
+        // face normal of the skinned triangle, (v2 - v0) x (v1 - v0)
+        private static EnumFacing getFacing(float[] positions, int a, int b, int c)
+        {
+            float e1x = positions[c] - positions[a], e1y = positions[c + 1] - positions[a + 1], e1z = positions[c + 2] - positions[a + 2];
+            float e2x = positions[b] - positions[a], e2y = positions[b + 1] - positions[a + 1], e2z = positions[b + 2] - positions[a + 2];
+            return MD5QuadEncoder.getFacing(e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x);
         }
 
         @Override
@@ -965,7 +2139,23 @@ public enum MD5Loader implements ICustomModelLoader {
         @Override
         public Pair<? extends IBakedModel, Matrix4f> handlePerspective(ItemCameraTransforms.TransformType cameraTransformType)
         {
-            return PerspectiveMapWrapper.handlePerspective(this, transforms, cameraTransformType);
+            BakedWrapper model = this;
+            switch(policy.getMode(cameraTransformType)) {
+                case REDUCED:
+                    model = reduce();
+                    break;
+                case FROZEN:
+                    if(frozen != null) model = frozen;
+                    break;
+                case BIND:
+                    if(bindPose != null) model = bindPose;
+                    break;
+                default:
+            }
+            model = model.cull(cameraTransformType);
+            // what the policy or culling picked doesn't know about hidden meshes yet
+            if(hidden != null && model != this) model = model.mask(hidden);
+            return PerspectiveMapWrapper.handlePerspective(model, transforms, cameraTransformType);
         }
 
         @Override
@@ -986,18 +2176,48 @@ public enum MD5Loader implements ICustomModelLoader {
         public IBakedModel handleItemState(IBakedModel originalModel, ItemStack stack, @Nullable World world, @Nullable EntityLivingBase entity)
         {
             BakedWrapper model = (BakedWrapper) originalModel;
+            BitSet hidden = model.getHiddenMeshes(MD5Pipeline.INSTANCE.findMeshVisibility(entity));
+            return getAnimated(model, stack, entity).mask(hidden);
+        }
+
+        private BakedWrapper getAnimated(BakedWrapper model, ItemStack stack, @Nullable EntityLivingBase entity)
+        {
+            // nothing to skin when every perspective the stack can show up in is fixed, handlePerspective picks those
+            if(!model.policy.animates(entity != null)) return model;
             if(model.state instanceof MD5State) {
                 MD5State md5State = (MD5State) model.state;
                 NBTTagCompound tag = stack.getTagCompound();
                 if(tag != null) {
                     float partialTicks = Minecraft.getMinecraft().getRenderPartialTicks();
                     int frame = tag.getInteger("frame");
-                    MD5State newState = new MD5State(md5State.animation, frame, frame + 1, partialTicks);
-                    return new BakedWrapper(((BakedWrapper) originalModel).meshes, newState, true, true,
-                            ((BakedWrapper) originalModel).format, ((BakedWrapper) originalModel).textures, ((BakedWrapper) originalModel).transforms);
+                    MD5Instance instance = MD5Pipeline.INSTANCE.getInstance(model, entity, () -> new MD5Instance(
+                            model.getSkinner(md5State.animation), entity, md5State.animation == null ? 0 : md5State.animation.getFrames()));
+                    MD5Instance.Track track = instance.observe(frame, MD5Pipeline.INSTANCE.getTicks());
+                    int steps = Math.max(1, interpolationSteps);
+                    int step = Math.min(steps, Math.round(partialTicks * steps));
+                    if(backgroundSkinning) {
+                        // blend the frames the worker skinned, the live path only runs until it has them
+                        MD5Instance.Pose pose = track.getPose(frame);
+                        if(pose != null) {
+                            // every stack showing this pose at this step shares its quads
+                            // already skinned with the overrides, the model never skins them again
+                            float progress = (float) step / steps;
+                            return model.deriveCached(Pair.of(pose, step), new MD5State(md5State.animation, frame, frame + 1, progress),
+                                    () -> track.blend(pose, progress), ImmutableMap.of());
+                        }
+                    }
+                    MD5State newState = new MD5State(md5State.animation, frame, frame + 1, (float) step / steps);
+                    MD5JointOverrides jointOverrides = MD5Pipeline.INSTANCE.findJointOverrides(entity);
+                    ImmutableMap<String, TRSRTransformation> overrides = jointOverrides == null ? ImmutableMap.of() : jointOverrides.snapshot();
+                    Object key = ((long) frame << 32) | step;
+                    // stacks only share a model when their overrides are the same too
+                    if(!overrides.isEmpty()) key = Pair.of(key, overrides);
+                    // skinned only where joints moved since the track's last pose
+                    float progress = (float) step / steps;
+                    return model.deriveCached(key, newState, () -> track.skinNow(frame, frame + 1, progress, overrides), overrides);
                 }
             }
-            return originalModel;
+            return model;
         }
     }
 }
@@ -0,0 +1,50 @@
+package com.flamingfrenchman.mcmd5.client.model;
+
+import com.flamingfrenchman.mcmd5.skeleton.MD5Skeleton;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Meshes hidden on the models an entity holds, by the shader name given in the
+ * md5mesh, for things like a muzzle flash or an attachment. Hiding a mesh only
+ * leaves its quads out of what the model returns, nothing is skinned or baked again.
+ * Get one from MD5Pipeline.getMeshVisibility; it is safe to change from any thread.
+ */
+public final class MD5MeshVisibility {
+    private final Set<String> hidden = ConcurrentHashMap.newKeySet();
+
+    MD5MeshVisibility() {}
+
+    public void setVisible(String shader, boolean visible) {
+        if(visible) hidden.remove(normalize(shader));
+        else hidden.add(normalize(shader));
+    }
+
+    public void hide(String shader) {
+        setVisible(shader, false);
+    }
+
+    public void show(String shader) {
+        setVisible(shader, true);
+    }
+
+    public boolean isVisible(String shader) {
+        return !hidden.contains(normalize(shader));
+    }
+
+    public void showAll() {
+        hidden.clear();
+    }
+
+    // nothing hidden
+    boolean isEmpty() {
+        return hidden.isEmpty();
+    }
+
+    // the way MD5Model stores shader names: unquoted, without .png
+    private static String normalize(String shader) {
+        String name = MD5Skeleton.unquote(shader);
+        return name.endsWith(".png") ? name.substring(0, name.length() - ".png".length()) : name;
+    }
+}
@@ -1,8 +1,10 @@
 package com.flamingfrenchman.mcmd5.client.model;
 
 import com.flamingfrenchman.mcmd5.Mcmd5;
+import com.flamingfrenchman.mcmd5.skeleton.MD5Skeleton;
 import com.google.common.collect.*;
 
+import javax.annotation.Nullable;
 import javax.vecmath.*;
 import java.io.*;
 import java.util.regex.Pattern;
@@ -27,6 +29,11 @@ public class MD5Model {
     private final ImmutableList<MD5Transform> transforms;
     private ImmutableList<MD5Frame> frames;
     private ImmutableList<MD5AnimJoint> animJoints;
+    // frames per second of the animation, from the md5anim
+    private final float frameRate;
+    // built on first use from any thread; a race only builds an equal copy twice
+    private volatile MD5Skeleton skeleton;
+    private volatile MD5RayPicker picker;
 
     public static boolean debugGeometry = false;
     public static boolean debugTextures = true;
@@ -38,15 +45,22 @@ public class MD5Model {
         this.transforms = transforms;
         this.animJoints = null;
         this.frames = null;
+        this.frameRate = 24;
     }
 
     public MD5Model(ImmutableList<MD5Mesh> meshes, ImmutableList<MD5Joint> joints, ImmutableList<MD5Transform> transforms,
                     ImmutableList<MD5AnimJoint> animJoints, ImmutableList<MD5Frame> frames) {
+        this(meshes, joints, transforms, animJoints, frames, 24);
+    }
+
+    public MD5Model(ImmutableList<MD5Mesh> meshes, ImmutableList<MD5Joint> joints, ImmutableList<MD5Transform> transforms,
+                    ImmutableList<MD5AnimJoint> animJoints, ImmutableList<MD5Frame> frames, float frameRate) {
         this.meshes = meshes;
         this.joints = joints;
         this.transforms = transforms;
         this.animJoints = animJoints;
         this.frames = frames;
+        this.frameRate = frameRate;
     }
 
     public ImmutableList<MD5Mesh> getMeshes() { return this.meshes; }
@@ -54,7 +68,93 @@ public class MD5Model {
     public ImmutableList<MD5Transform> getTransforms() { return this.transforms; }
     public ImmutableList<MD5AnimJoint> getAnimJoints() { return this.animJoints; }
     public ImmutableList<MD5Frame> getFrames() { return this.frames; }
-    
+    public float getFrameRate() { return this.frameRate; }
+
+    /*
+     * Joint hierarchy and channels only, in the same form the server uses. Built
+     * on first use since most models are never queried this way.
+     */
+    public MD5Skeleton getSkeleton() {
+        MD5Skeleton skeleton = this.skeleton;
+        if(skeleton == null) {
+            this.skeleton = skeleton = buildSkeleton();
+        }
+        return skeleton;
+    }
+
+    /*
+     * Per-joint bounds over the meshes for picking against the animated model,
+     * built on first use.
+     */
+    public MD5RayPicker getRayPicker() {
+        MD5RayPicker picker = this.picker;
+        if(picker == null) {
+            this.picker = picker = new MD5RayPicker(this);
+        }
+        return picker;
+    }
+
+    /*
+     * Looks the joint up by name once; the returned socket can then be evaluated
+     * for any frame without touching the meshes. Returns null if there is no
+     * joint with that name.
+     */
+    @Nullable
+    public MD5JointSocket getSocket(String jointName) {
+        MD5Skeleton skeleton = getSkeleton();
+        int joint = skeleton.getJointIndex(jointName);
+        if(joint < 0) return null;
+        return new MD5JointSocket(skeleton, skeleton.getJointName(joint), skeleton.getChain(joint));
+    }
+
+    private MD5Skeleton buildSkeleton() {
+        boolean animated = animJoints != null && frames != null && !frames.isEmpty();
+        int count = animated ? animJoints.size() : joints.size();
+        String[] names = new String[count];
+        int[] parents = new int[count];
+        float[] bindPositions = new float[count * 3];
+        float[] bindOrientations = new float[count * 4];
+
+        for(int i = 0 ; i < count ; ++i) {
+            names[i] = MD5Skeleton.unquote(animated ? animJoints.get(i).getName() : joints.get(i).getName());
+            parents[i] = animated ? animJoints.get(i).getParent() : joints.get(i).getParent();
+            if(i < joints.size()) {
+                MD5Joint joint = joints.get(i);
+                Vector3f pos = joint.getPos();
+                bindPositions[i * 3] = pos.x;
+                bindPositions[i * 3 + 1] = pos.y;
+                bindPositions[i * 3 + 2] = pos.z;
+                Quat4f rot = joint.getRot();
+                bindOrientations[i * 4] = rot.x;
+                bindOrientations[i * 4 + 1] = rot.y;
+                bindOrientations[i * 4 + 2] = rot.z;
+                bindOrientations[i * 4 + 3] = rot.w;
+            }
+        }
+
+        int frameCount = animated ? frames.size() : 0;
+        float[][] framePositions = new float[frameCount][];
+        float[][] frameOrientations = new float[frameCount][];
+        for(int f = 0 ; f < frameCount ; ++f) {
+            MD5Frame frame = frames.get(f);
+            framePositions[f] = new float[count * 3];
+            frameOrientations[f] = new float[count * 4];
+            for(int i = 0 ; i < count ; ++i) {
+                Vector3f pos = frame.positions[i];
+                Quat4f rot = frame.orientations[i];
+                framePositions[f][i * 3] = pos.x;
+                framePositions[f][i * 3 + 1] = pos.y;
+                framePositions[f][i * 3 + 2] = pos.z;
+                frameOrientations[f][i * 4] = rot.x;
+                frameOrientations[f][i * 4 + 1] = rot.y;
+                frameOrientations[f][i * 4 + 2] = rot.z;
+                frameOrientations[f][i * 4 + 3] = rot.w;
+            }
+        }
+        // same rate as the server reads from the md5anim, and the client animation uses
+        return new MD5Skeleton(names, parents, bindPositions, bindOrientations, framePositions, frameOrientations, frameRate);
+    }
+
     public static void log(String str) {
         Mcmd5.logger.log(Level.INFO, str);
     }
@@ -71,7 +171,7 @@ public class MD5Model {
         private int animJoints;
         private int meshCount;
         private int numFrames;
-        private int frameRate;
+        private float frameRate = 24;
         private int numAnimatedComponents;
 
         public Parser(IResource resource, IResourceManager manager, ResourceLocation file) throws IOException
@@ -165,7 +265,7 @@ public class MD5Model {
                         numJoints = Integer.parseInt(line.substring("numJoints".length()).trim());
                     }
                     else if(line.contains("frameRate")) {
-                        frameRate = Integer.parseInt(line.substring("frameRate".length()).trim());
+                        frameRate = Float.parseFloat(line.substring("frameRate".length()).trim());
                     }
                     else if(line.contains("numAnimatedComponents")) {
                         numAnimatedComponents = Integer.parseInt(line.substring("numAnimatedComponents".length()).trim());
@@ -195,7 +295,7 @@ public class MD5Model {
                 bufferedReader.close();
             }
 
-            return new MD5Model(meshBuilder.build(), jointBuilder.build(), transformBuilder.build(), hierarchy, frames.build());
+            return new MD5Model(meshBuilder.build(), jointBuilder.build(), transformBuilder.build(), hierarchy, frames.build(), frameRate);
         }
 
         private void parseBounds() {
@@ -466,6 +566,44 @@ public class MD5Model {
         }
     }
 
+    /*
+     * Handle to a single joint for attaching things (muzzle flashes, held items,
+     * particles) to an animated model. Only the joint's ancestors are evaluated,
+     * so a query is a handful of quaternion products rather than a mesh bake.
+     */
+    public static class MD5JointSocket {
+        private final MD5Skeleton skeleton;
+        private final String name;
+        private final int[] chain;
+
+        private MD5JointSocket(MD5Skeleton skeleton, String name, int[] chain) {
+            this.skeleton = skeleton;
+            this.name = name;
+            this.chain = chain;
+        }
+
+        public String getName() { return this.name; }
+        public int getJointIndex() { return this.chain[chain.length - 1]; }
+
+        public Matrix4f getTransform(int frame) {
+            return getTransform(frame, frame, 0);
+        }
+
+        public Matrix4f getTransform(int frame, int nextFrame, float progress) {
+            Matrix4f out = new Matrix4f();
+            getTransform(frame, nextFrame, progress, out);
+            return out;
+        }
+
+        /*
+         * Writes the model-space transform of the joint into out. Frames wrap around
+         * the clip so frame + 1 can be passed for the last frame, same as the item does.
+         */
+        public void getTransform(int frame, int nextFrame, float progress, Matrix4f out) {
+            skeleton.evaluateChain(chain, frame, nextFrame, progress, out);
+        }
+    }
+
     public static class MD5AnimJoint {
         private String name;
         private int parent;
@@ -0,0 +1,169 @@
+package com.flamingfrenchman.mcmd5.client.model;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/*
+ * Drives the background skinning of every live MD5Instance. Has to be registered
+ * on the event bus, without it instances are never skinned and models fall back
+ * to skinning on the render thread.
+ *
+ * Every tick the instances whose pose is out of date are ordered: the ones rendered
+ * since the last tick first, then by distance to the player shrunk by how many
+ * ticks they have been waiting. The worker skins them in that order until
+ * MD5Loader.skinningBudgetMillis is used up; the rest are skinned on the render
+ * thread meanwhile and come up again next tick, closer to the front.
+ */
+public enum MD5Pipeline {
+
+    INSTANCE;
+
+    // instances nobody rendered for this many ticks are dropped
+    private static final long EXPIRY = 40;
+
+    private final Map<Pair<Object, Object>, MD5Instance> instances = new ConcurrentHashMap<>();
+    private final Map<Entity, MD5JointOverrides> overrides = Collections.synchronizedMap(new WeakHashMap<>());
+    private final MD5JointOverrides sharedOverrides = new MD5JointOverrides();
+    private final Map<Entity, MD5MeshVisibility> visibility = Collections.synchronizedMap(new WeakHashMap<>());
+    private final MD5MeshVisibility sharedVisibility = new MD5MeshVisibility();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "MD5 skinning");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // set while a batch is on the worker, a tick that finds it set skips scheduling
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile long ticks;
+    // render frames started, models derived for one frame are dropped at the next
+    private long renderFrames;
+
+    /*
+     * The instance of owner held by entity; a null entity (inventory, item frames)
+     * shares one instance per owner.
+     */
+    MD5Instance getInstance(Object owner, @Nullable Entity entity, Supplier<MD5Instance> factory) {
+        return instances.computeIfAbsent(Pair.of(owner, entity == null ? owner : entity), key -> factory.get());
+    }
+
+    /*
+     * Joint overrides for every model held by the entity; null gives the ones of
+     * the shared instances shown in guis and item frames.
+     */
+    public MD5JointOverrides getJointOverrides(@Nullable Entity holder) {
+        if(holder == null) return sharedOverrides;
+        return overrides.computeIfAbsent(holder, key -> new MD5JointOverrides());
+    }
+
+    /*
+     * Hidden meshes of every model held by the entity; null gives the ones of models
+     * shown in guis and item frames.
+     */
+    public MD5MeshVisibility getMeshVisibility(@Nullable Entity holder) {
+        if(holder == null) return sharedVisibility;
+        return visibility.computeIfAbsent(holder, key -> new MD5MeshVisibility());
+    }
+
+    // like getMeshVisibility, without making one for an entity that has none yet
+    @Nullable
+    MD5MeshVisibility findMeshVisibility(@Nullable Entity holder) {
+        return holder == null ? sharedVisibility : visibility.get(holder);
+    }
+
+    // like getJointOverrides, without making one for an entity that has none yet
+    @Nullable
+    MD5JointOverrides findJointOverrides(@Nullable Entity holder) {
+        return holder == null ? sharedOverrides : overrides.get(holder);
+    }
+
+    long getTicks() {
+        return ticks;
+    }
+
+    long getRenderFrames() {
+        return renderFrames;
+    }
+
+    @SubscribeEvent
+    public void onRenderTick(TickEvent.RenderTickEvent event) {
+        if(event.phase == TickEvent.Phase.START) ++renderFrames;
+    }
+
+    @SubscribeEvent
+    public void onClientTick(TickEvent.ClientTickEvent event) {
+        if(event.phase != TickEvent.Phase.END || Minecraft.getMinecraft().isGamePaused()) return;
+        long now = ++ticks;
+        // instances are still made and expired with background skinning off, the render thread skins them
+        boolean schedule = MD5Loader.backgroundSkinning && !running.get();
+        EntityPlayer player = Minecraft.getMinecraft().player;
+
+        List<Pending> pending = new ArrayList<>();
+        Iterator<MD5Instance> it = instances.values().iterator();
+        while(it.hasNext()) {
+            MD5Instance instance = it.next();
+            if(now - instance.getLastUsed() > EXPIRY) it.remove();
+            else if(schedule && instance.needsUpdate(now)) pending.add(new Pending(instance, now, player));
+        }
+        if(pending.isEmpty()) return;
+
+        pending.sort(Comparator.comparing((Pending p) -> !p.visible).thenComparingDouble(p -> p.weight));
+        running.set(true);
+        try {
+            worker.execute(() -> {
+                try {
+                    run(pending, now);
+                }
+                finally {
+                    running.set(false);
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    private static void run(List<Pending> pending, long tick) {
+        long budget = (long) (MD5Loader.skinningBudgetMillis * 1000000L);
+        long start = System.nanoTime();
+        for(int i = 0 ; i < pending.size() ; ++i) {
+            // always make some progress, even when one instance alone is over budget
+            if(i > 0 && System.nanoTime() - start >= budget) return;
+            pending.get(i).instance.update(tick);
+        }
+    }
+
+    private static final class Pending {
+        private final MD5Instance instance;
+        private final boolean visible;
+        private final double weight;
+
+        private Pending(MD5Instance instance, long tick, @Nullable EntityPlayer player) {
+            this.instance = instance;
+            this.visible = tick - instance.getLastUsed() <= 1;
+            Entity holder = instance.getHolder();
+            // the shared instance is what the player sees in guis, treat it as right here
+            double distanceSq = holder == null || player == null ? 0 : player.getDistanceSq(holder.posX, holder.posY, holder.posZ);
+            long waiting = tick - instance.getLastUpdated();
+            this.weight = Math.sqrt(distanceSq) / (1 + waiting);
+        }
+    }
+}
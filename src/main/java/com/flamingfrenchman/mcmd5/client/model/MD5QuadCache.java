@@ -0,0 +1,107 @@
+package com.flamingfrenchman.mcmd5.client.model;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+/*
+ * Quads skinned for model states, shared by every MD5 model and bounded by the
+ * approximate bytes they take up rather than by a count. The budget is
+ * MD5Loader.quadCacheBudget as it was at the last invalidateAll, which resource
+ * reloads call, or at startup. Hit, miss and eviction counts since then and the
+ * current size can be read at any time to size it.
+ */
+public enum MD5QuadCache {
+
+    INSTANCE;
+
+    private final AtomicLong weight = new AtomicLong();
+    private volatile Cache<Key, Entry> cache = build();
+
+    /*
+     * The value cached under key for owner, loading and weighing it on a miss. Owners
+     * are compared by identity, keys by equals, so a key has to be a value that is
+     * equal for equal states, not a state that is made again for every call.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(Object owner, Object key, Callable<T> loader, ToIntFunction<T> weigher) {
+        try {
+            return (T) cache.get(new Key(owner, key), () -> {
+                T value = loader.call();
+                Entry entry = new Entry(value, weigher.applyAsInt(value));
+                weight.addAndGet(entry.weight);
+                return entry;
+            }).value;
+        }
+        catch (ExecutionException e) {
+            throw new UncheckedExecutionException(e.getCause());
+        }
+    }
+
+    // hits, misses, loads and evictions since startup
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getEntryCount() {
+        return cache.size();
+    }
+
+    // approximate bytes held by the cached quads
+    public long getWeight() {
+        return weight.get();
+    }
+
+    // drops everything and starts over with the current budget
+    public void invalidateAll() {
+        Cache<Key, Entry> old = cache;
+        cache = build();
+        old.invalidateAll();
+    }
+
+    private Cache<Key, Entry> build() {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(0, MD5Loader.quadCacheBudget))
+                .weigher((Key key, Entry entry) -> entry.weight)
+                .removalListener(notification -> weight.addAndGet(-notification.getValue().weight))
+                .recordStats()
+                .build();
+    }
+
+    private static final class Key {
+        private final Object owner;
+        private final Object key;
+
+        private Key(Object owner, Object key) {
+            this.owner = owner;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return owner == other.owner && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(owner) * 31 + key.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final int weight;
+
+        private Entry(Object value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.flamingfrenchman.mcmd5.client.model;
+
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.client.renderer.vertex.VertexFormat;
+import net.minecraft.client.renderer.vertex.VertexFormatElement;
+import net.minecraft.util.EnumFacing;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/*
+ * Writes skinned vertices straight into the packed int[] of a BakedQuad. The layout
+ * of a VertexFormat is worked out once, when its encoder is first asked for, instead
+ * of going through UnpackedBakedQuad.Builder element by element for every vertex.
+ * The output matches what the builder packs with contracted UVs: position, white
+ * color, the first texture coordinates, normal, and zero for everything else.
+ * Everything but positions and normals is prepared once per bake, see prepare.
+ */
+final class MD5QuadEncoder {
+    private static final Map<VertexFormat, MD5QuadEncoder> ENCODERS = new ConcurrentHashMap<>();
+
+    private static final int ZERO = 0;
+    private static final int POSITION = 1;
+    private static final int COLOR = 2;
+    private static final int UV = 3;
+    private static final int NORMAL = 4;
+
+    private static final int FLOAT = 0;
+    private static final int UNSIGNED = 1;
+    private static final int SIGNED = 2;
+
+    // same as UnpackedBakedQuad.Builder
+    private static final float CONTRACT = 1f / 0x100;
+
+    private final VertexFormat format;
+    private final int stride;
+    // per element: what goes in, its first byte in a vertex, component count, component size and number kind
+    private final int[] contents;
+    private final int[] offsets;
+    private final int[] counts;
+    private final int[] sizes;
+    private final int[] kinds;
+    private final boolean hasUVs;
+    private final boolean hasNormals;
+    // the only elements that change with the pose
+    private final int[] positionElements;
+    private final int[] normalElements;
+
+    private MD5QuadEncoder(VertexFormat format) {
+        this.format = format;
+        this.stride = format.getNextOffset();
+        int elements = format.getElementCount();
+        this.contents = new int[elements];
+        this.offsets = new int[elements];
+        this.counts = new int[elements];
+        this.sizes = new int[elements];
+        this.kinds = new int[elements];
+        boolean uvs = false, normals = false;
+        for(int e = 0 ; e < elements ; ++e) {
+            VertexFormatElement element = format.getElement(e);
+            switch(element.getUsage()) {
+                case POSITION:
+                    contents[e] = POSITION;
+                    break;
+                case COLOR:
+                    contents[e] = COLOR;
+                    break;
+                case UV:
+                    // lightmap coordinates are left at zero
+                    contents[e] = element.getIndex() == 0 ? UV : ZERO;
+                    uvs |= element.getIndex() == 0;
+                    break;
+                case NORMAL:
+                    contents[e] = NORMAL;
+                    normals = true;
+                    break;
+                default:
+                    contents[e] = ZERO;
+            }
+            offsets[e] = format.getOffset(e);
+            counts[e] = Math.min(4, element.getElementCount());
+            sizes[e] = element.getType().getSize();
+            switch(element.getType()) {
+                case FLOAT:
+                    kinds[e] = FLOAT;
+                    break;
+                case UBYTE:
+                case USHORT:
+                case UINT:
+                    kinds[e] = UNSIGNED;
+                    break;
+                default:
+                    kinds[e] = SIGNED;
+            }
+        }
+        this.hasUVs = uvs;
+        this.hasNormals = normals;
+        this.positionElements = IntStream.range(0, elements).filter(e -> contents[e] == POSITION).toArray();
+        this.normalElements = IntStream.range(0, elements).filter(e -> contents[e] == NORMAL).toArray();
+    }
+
+    static MD5QuadEncoder get(VertexFormat format) {
+        return ENCODERS.computeIfAbsent(format, MD5QuadEncoder::new);
+    }
+
+    VertexFormat getFormat() {
+        return format;
+    }
+
+    boolean hasNormals() {
+        return hasNormals;
+    }
+
+    // whether readPosition can decode positions of this format
+    boolean hasFloatPositions() {
+        return positionElements.length > 0 && kinds[positionElements[0]] == FLOAT && counts[positionElements[0]] >= 3;
+    }
+
+    // position of vertex of a quad packed for this format into out, see hasFloatPositions
+    void readPosition(int[] data, int vertex, float[] out) {
+        int e = positionElements[0];
+        int at = (vertex * stride + offsets[e]) >> 2;
+        out[0] = Float.intBitsToFloat(data[at]);
+        out[1] = Float.intBitsToFloat(data[at + 1]);
+        out[2] = Float.intBitsToFloat(data[at + 2]);
+    }
+
+    // ints of packed vertex data in one quad
+    int getQuadSize() {
+        return format.getIntegerSize() * 4;
+    }
+
+    /*
+     * Fills in everything of a quad that doesn't depend on the pose, at offset in
+     * data: white color, texture coordinates and zeros. uvs holds the atlas u and v
+     * of each of the four vertices, which are contracted towards their center like
+     * the builder does so neighbouring sprites don't bleed in.
+     */
+    void prepare(int[] data, int offset, float[] uvs, TextureAtlasSprite sprite) {
+        if(hasUVs) contractUVs(uvs, sprite);
+        for(int v = 0 ; v < 4 ; ++v) {
+            int base = offset * 4 + v * stride;
+            for(int e = 0 ; e < contents.length ; ++e) {
+                int at = base + offsets[e];
+                switch(contents[e]) {
+                    case COLOR:
+                        put(data, at, e, 1, 1, 1, 1);
+                        break;
+                    case UV:
+                        put(data, at, e, uvs[v * 2], uvs[v * 2 + 1], 0, 1);
+                        break;
+                    case POSITION:
+                    case NORMAL:
+                        // written per pose
+                        break;
+                    default:
+                        put(data, at, e, 0, 0, 0, 0);
+                }
+            }
+        }
+    }
+
+    /*
+     * Builds one quad from a prepared template at offset, writing only positions and
+     * normals of the four vertices, offsets o[0..3] into positions and normals
+     * (three floats per vertex).
+     */
+    BakedQuad encode(int[] template, int offset, float[] positions, @Nullable float[] normals, int[] o,
+                     TextureAtlasSprite sprite, EnumFacing face) {
+        int[] data = Arrays.copyOfRange(template, offset, offset + getQuadSize());
+        write(data, positions, normals, o);
+        return new BakedQuad(data, -1, face, sprite, true, format);
+    }
+
+    // rewrites positions and normals of a quad already packed for this format, leaving the rest as is
+    void write(int[] data, float[] positions, @Nullable float[] normals, int[] o) {
+        for(int v = 0 ; v < 4 ; ++v) {
+            int base = v * stride;
+            int p = o[v];
+            for(int e : positionElements) {
+                put(data, base + offsets[e], e, positions[p], positions[p + 1], positions[p + 2], 1);
+            }
+            for(int e : normalElements) {
+                if(normals != null) put(data, base + offsets[e], e, normals[p], normals[p + 1], normals[p + 2], 0);
+                else put(data, base + offsets[e], e, 0, 0, 0, 0);
+            }
+        }
+    }
+
+    private void put(int[] data, int at, int e, float x, float y, float z, float w) {
+        int count = counts[e];
+        int size = sizes[e];
+        int kind = kinds[e];
+        pack(data, at, size, kind, x);
+        if(count > 1) pack(data, at + size, size, kind, y);
+        if(count > 2) pack(data, at + size * 2, size, kind, z);
+        if(count > 3) pack(data, at + size * 3, size, kind, w);
+    }
+
+    // one component, the same way LightUtil.pack does it
+    private static void pack(int[] data, int pos, int size, int kind, float f) {
+        int bits;
+        if(kind == FLOAT) bits = Float.floatToRawIntBits(f);
+        else if(kind == UNSIGNED) bits = Math.round(f * (0xFFFFFFFF >>> (32 - size * 8)));
+        else bits = Math.round(f * (0xFFFFFFFF >>> (33 - size * 8)));
+        int mask = (256 << (8 * (size - 1))) - 1;
+        int index = pos >> 2;
+        int shift = (pos & 3) * 8;
+        data[index] &= ~(mask << shift);
+        data[index] |= (bits & mask) << shift;
+    }
+
+    private static void contractUVs(float[] uvs, TextureAtlasSprite sprite) {
+        float tX = sprite.getIconWidth() / (sprite.getMaxU() - sprite.getMinU());
+        float tY = sprite.getIconHeight() / (sprite.getMaxV() - sprite.getMinV());
+        float tS = tX > tY ? tX : tY;
+        float ep = 1f / (tS * 0x100);
+        for(int i = 0 ; i < 2 ; ++i) {
+            float center = (uvs[i] + uvs[2 + i] + uvs[4 + i] + uvs[6 + i]) / 4;
+            for(int v = 0 ; v < 4 ; ++v) {
+                float uo = uvs[v * 2 + i];
+                float un = uo * (1 - CONTRACT) + center * CONTRACT;
+                float ud = uo - un;
+                if(Math.abs(ud) < ep) {
+                    // not moving a fraction of a pixel, and not too close to the center either
+                    if(Math.abs(uo - center) < 2 * ep) un = (uo + center) / 2;
+                    else un = uo + (ud < 0 ? ep : -ep);
+                }
+                uvs[v * 2 + i] = un;
+            }
+        }
+    }
+
+    /*
+     * EnumFacing.getFacingFromVector without the values() copy: the facing whose
+     * direction has the largest positive dot product, NORTH if none has.
+     */
+    static EnumFacing getFacing(float x, float y, float z) {
+        EnumFacing facing = EnumFacing.NORTH;
+        float max = Float.MIN_VALUE;
+        if(-y > max) { max = -y; facing = EnumFacing.DOWN; }
+        if(y > max) { max = y; facing = EnumFacing.UP; }
+        if(-z > max) { max = -z; facing = EnumFacing.NORTH; }
+        if(z > max) { max = z; facing = EnumFacing.SOUTH; }
+        if(-x > max) { max = -x; facing = EnumFacing.WEST; }
+        if(x > max) { facing = EnumFacing.EAST; }
+        return facing;
+    }
+}
@@ -0,0 +1,69 @@
+package com.flamingfrenchman.mcmd5.client.model;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.client.renderer.block.model.BakedQuad;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.util.EnumFacing;
+
+import javax.annotation.Nullable;
+
+/*
+ * Two sets of quads a track skins into by turns, so that from the second pose
+ * on a frame rewrites positions and normals in the vertex data of the quads it
+ * already has instead of allocating new ones. While one set is being written the
+ * other is what the render thread draws; a set is only written again two updates
+ * after it was handed out. A quad is only replaced when what it can't change does:
+ * its facing, sprite or format.
+ *
+ * Only the render thread uses it.
+ */
+final class MD5QuadPool {
+    private final Buffer[] buffers = { new Buffer(), new Buffer() };
+    private int back;
+    @Nullable
+    private Buffer writing;
+
+    // starts writing the back set, which has to hold count quads
+    void begin(int count) {
+        writing = buffers[back];
+        if(writing.quads.length != count) {
+            writing.quads = new BakedQuad[count];
+            writing.list = null;
+        }
+    }
+
+    void put(int index, MD5QuadEncoder encoder, int[] template, int offset, float[] positions, @Nullable float[] normals,
+             int[] corners, TextureAtlasSprite sprite, EnumFacing face) {
+        BakedQuad quad = writing.quads[index];
+        if(quad != null && quad.getFace() == face && quad.getSprite() == sprite && quad.getFormat() == encoder.getFormat()) {
+            encoder.write(quad.getVertexData(), positions, normals, corners);
+            return;
+        }
+        writing.quads[index] = encoder.encode(template, offset, positions, normals, corners, sprite, face);
+        writing.list = null;
+    }
+
+    // the set just written, the other one is written next
+    ImmutableList<BakedQuad> finish() {
+        Buffer buffer = writing;
+        writing = null;
+        back ^= 1;
+        if(buffer.list == null) buffer.list = ImmutableList.copyOf(buffer.quads);
+        return buffer.list;
+    }
+
+    // drops a set left half written by a failed update
+    void abort() {
+        if(writing == null) return;
+        writing.quads = new BakedQuad[0];
+        writing.list = null;
+        writing = null;
+    }
+
+    private static final class Buffer {
+        private BakedQuad[] quads = new BakedQuad[0];
+        // handed out as is while no quad in the set was replaced
+        @Nullable
+        private ImmutableList<BakedQuad> list;
+    }
+}
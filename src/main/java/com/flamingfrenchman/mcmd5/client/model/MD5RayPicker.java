@@ -0,0 +1,366 @@
+package com.flamingfrenchman.mcmd5.client.model;
+
+import com.flamingfrenchman.mcmd5.skeleton.MD5Skeleton;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import javax.vecmath.Vector3f;
+import java.util.*;
+
+/*
+ * Ray picking against the animated model without skinning it.
+ *
+ * Every joint gets a box around the weight offsets bound to it. Weight offsets are
+ * joint-local, so that box is fixed in bind pose and only needs to be moved by the
+ * joint's current matrix. A skinned vertex is a weighted average of its weights
+ * moved by their joints, so it always lies inside the union of its joints' moved
+ * boxes.
+ *
+ * Triangles are grouped by the set of joints they depend on. Each group is hung
+ * under the deepest joint that is an ancestor of all of them. The skeleton then
+ * works as a BVH: a subtree box that the ray misses skips every group below it.
+ * Only the vertices of the groups that are hit get skinned and tested.
+ */
+public final class MD5RayPicker {
+    private final MD5Skeleton skeleton;
+    private final ImmutableList<MD5Model.MD5Mesh> meshes;
+    // joint-local bounds, 6 floats per joint (min xyz, max xyz); empty joints are inverted
+    private final float[] jointBounds;
+    // groups owned by each joint, and groups spanning separate roots
+    private final TriangleGroup[][] groupsByJoint;
+    private final TriangleGroup[] rootGroups;
+    private final int[] vertexOffsets;
+    private final int vertexCount;
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(skeleton.getJointCount(), vertexCount);
+        }
+    };
+
+    public MD5RayPicker(MD5Model model) {
+        this.skeleton = model.getSkeleton();
+        this.meshes = model.getMeshes();
+        int joints = skeleton.getJointCount();
+        this.jointBounds = new float[joints * 6];
+        for(int j = 0 ; j < joints ; ++j) {
+            clear(jointBounds, j * 6);
+        }
+
+        this.vertexOffsets = new int[meshes.size()];
+        int vertices = 0;
+        for(int m = 0 ; m < meshes.size() ; ++m) {
+            vertexOffsets[m] = vertices;
+            vertices += meshes.get(m).getVertices().length;
+            for(MD5Model.MD5Weight weight : meshes.get(m).getWeights()) {
+                if(weight.getBias() <= 0 || weight.getJointIndex() >= joints) continue;
+                Vector3f pos = weight.getPos();
+                include(jointBounds, weight.getJointIndex() * 6, pos.x, pos.y, pos.z);
+            }
+        }
+        this.vertexCount = vertices;
+
+        Map<List<Integer>, List<int[]>> groups = new LinkedHashMap<>();
+        for(int m = 0 ; m < meshes.size() ; ++m) {
+            MD5Model.MD5Mesh mesh = meshes.get(m);
+            MD5Model.MD5Triangle[] triangles = mesh.getTriangles();
+            for(int t = 0 ; t < triangles.length ; ++t) {
+                MD5Model.MD5Triangle tri = triangles[t];
+                TreeSet<Integer> influences = new TreeSet<>();
+                addInfluences(mesh, tri.getV0(), influences);
+                addInfluences(mesh, tri.getV1(), influences);
+                addInfluences(mesh, tri.getV2(), influences);
+                if(influences.isEmpty()) continue;
+                groups.computeIfAbsent(new ArrayList<>(influences), k -> new ArrayList<>()).add(new int[] { m, t });
+            }
+        }
+
+        List<TriangleGroup> spanning = new ArrayList<>();
+        List<List<TriangleGroup>> owned = new ArrayList<>();
+        for(int j = 0 ; j < joints ; ++j) owned.add(new ArrayList<>());
+        for(Map.Entry<List<Integer>, List<int[]>> e : groups.entrySet()) {
+            List<Integer> influences = e.getKey();
+            int[] groupJoints = new int[influences.size()];
+            for(int i = 0 ; i < groupJoints.length ; ++i) groupJoints[i] = influences.get(i);
+            List<int[]> tris = e.getValue();
+            int[] meshIndices = new int[tris.size()];
+            int[] triIndices = new int[tris.size()];
+            for(int i = 0 ; i < tris.size() ; ++i) {
+                meshIndices[i] = tris.get(i)[0];
+                triIndices[i] = tris.get(i)[1];
+            }
+            int owner = commonAncestor(groupJoints);
+            (owner < 0 ? spanning : owned.get(owner)).add(new TriangleGroup(groupJoints, meshIndices, triIndices));
+        }
+        this.groupsByJoint = new TriangleGroup[joints][];
+        for(int j = 0 ; j < joints ; ++j) {
+            groupsByJoint[j] = owned.get(j).toArray(new TriangleGroup[0]);
+        }
+        this.rootGroups = spanning.toArray(new TriangleGroup[0]);
+    }
+
+    /*
+     * Casts a ray in model space against the model posed between frame and nextFrame.
+     * direction does not need to be normalized; the returned distance is in
+     * multiples of it. Returns null if nothing is hit.
+     */
+    @Nullable
+    public Hit raycast(int frame, int nextFrame, float progress, Vector3f origin, Vector3f direction) {
+        Scratch s = scratch.get();
+        s.nextQuery();
+        skeleton.evaluate(frame, nextFrame, progress, s.pose);
+        int joints = skeleton.getJointCount();
+
+        // move each joint's box, then grow subtree boxes from the leaves up
+        for(int j = 0 ; j < joints ; ++j) {
+            transformBounds(jointBounds, j * 6, s.pose, j * MD5Skeleton.MATRIX_SIZE, s.bounds, j * 6);
+            System.arraycopy(s.bounds, j * 6, s.subtree, j * 6, 6);
+        }
+        for(int j = joints - 1 ; j >= 0 ; --j) {
+            int parent = skeleton.getParent(j);
+            if(parent > -1) union(s.subtree, parent * 6, s.subtree, j * 6);
+        }
+
+        s.best = Float.POSITIVE_INFINITY;
+        s.bestMesh = -1;
+        s.bestTriangle = -1;
+        testGroups(s, rootGroups, origin, direction);
+
+        // roots first; children are pushed only if their subtree box is hit
+        int stack = 0;
+        for(int j = 0 ; j < joints ; ++j) {
+            if(skeleton.getParent(j) < 0) s.stack[stack++] = j;
+        }
+        while(stack > 0) {
+            int joint = s.stack[--stack];
+            if(!intersects(s.subtree, joint * 6, origin, direction, s.best)) continue;
+            testGroups(s, groupsByJoint[joint], origin, direction);
+            for(int child = joint + 1 ; child < joints ; ++child) {
+                if(skeleton.getParent(child) == joint) s.stack[stack++] = child;
+            }
+        }
+
+        return s.bestMesh < 0 ? null : new Hit(s.best, s.bestMesh, s.bestTriangle);
+    }
+
+    private void testGroups(Scratch s, TriangleGroup[] groups, Vector3f origin, Vector3f direction) {
+        for(TriangleGroup group : groups) {
+            clear(s.group, 0);
+            for(int j : group.joints) union(s.group, 0, s.bounds, j * 6);
+            if(!intersects(s.group, 0, origin, direction, s.best)) continue;
+
+            for(int i = 0 ; i < group.triangles.length ; ++i) {
+                int m = group.meshes[i];
+                MD5Model.MD5Triangle tri = meshes.get(m).getTriangles()[group.triangles[i]];
+                int a = skin(s, m, tri.getV0());
+                int b = skin(s, m, tri.getV1());
+                int c = skin(s, m, tri.getV2());
+                float t = intersectTriangle(s.vertices, a, b, c, origin, direction);
+                if(t >= 0 && t < s.best) {
+                    s.best = t;
+                    s.bestMesh = m;
+                    s.bestTriangle = group.triangles[i];
+                }
+            }
+        }
+    }
+    // skins one vertex on demand, at most once per query; returns its offset in s.vertices
+    private int skin(Scratch s, int mesh, int vertex) {
+        int index = vertexOffsets[mesh] + vertex;
+        int o = index * 3;
+        if(s.stamps[index] == s.query) return o;
+        s.stamps[index] = s.query;
+
+        MD5Model.MD5Mesh md5Mesh = meshes.get(mesh);
+        MD5Model.MD5Vertex v = md5Mesh.getVertices()[vertex];
+        MD5Model.MD5Weight[] weights = md5Mesh.getWeights();
+        float x = 0, y = 0, z = 0;
+        for(int w = v.getWeightStart() ; w < v.getWeightStart() + v.getNumweights() ; ++w) {
+            MD5Model.MD5Weight weight = weights[w];
+            if(weight.getJointIndex() >= skeleton.getJointCount()) continue;
+            int m = weight.getJointIndex() * MD5Skeleton.MATRIX_SIZE;
+            float[] p = s.pose;
+            Vector3f pos = weight.getPos();
+            float bias = weight.getBias();
+            x += bias * (p[m] * pos.x + p[m + 1] * pos.y + p[m + 2] * pos.z + p[m + 3]);
+            y += bias * (p[m + 4] * pos.x + p[m + 5] * pos.y + p[m + 6] * pos.z + p[m + 7]);
+            z += bias * (p[m + 8] * pos.x + p[m + 9] * pos.y + p[m + 10] * pos.z + p[m + 11]);
+        }
+        s.vertices[o] = x;
+        s.vertices[o + 1] = y;
+        s.vertices[o + 2] = z;
+        return o;
+    }
+
+    private void addInfluences(MD5Model.MD5Mesh mesh, int vertex, Set<Integer> out) {
+        MD5Model.MD5Vertex v = mesh.getVertices()[vertex];
+        MD5Model.MD5Weight[] weights = mesh.getWeights();
+        for(int w = v.getWeightStart() ; w < v.getWeightStart() + v.getNumweights() ; ++w) {
+            int joint = weights[w].getJointIndex();
+            if(weights[w].getBias() > 0 && joint < skeleton.getJointCount()) out.add(joint);
+        }
+    }
+
+    private int commonAncestor(int[] joints) {
+        int ancestor = joints[0];
+        for(int i = 1 ; i < joints.length ; ++i) {
+            int other = joints[i];
+            // parents precede children, so walk whichever index is deeper in the list
+            while(ancestor != other) {
+                if(ancestor < 0 || other < 0) return -1;
+                if(ancestor > other) ancestor = skeleton.getParent(ancestor);
+                else other = skeleton.getParent(other);
+            }
+        }
+        return ancestor;
+    }
+
+    // moves a box by a rigid matrix: new center, and extents through the absolute rotation
+    private static void transformBounds(float[] in, int i, float[] m, int o, float[] out, int r) {
+        if(in[i] > in[i + 3]) {
+            clear(out, r);
+            return;
+        }
+        float cx = (in[i] + in[i + 3]) * 0.5f, cy = (in[i + 1] + in[i + 4]) * 0.5f, cz = (in[i + 2] + in[i + 5]) * 0.5f;
+        float ex = (in[i + 3] - in[i]) * 0.5f, ey = (in[i + 4] - in[i + 1]) * 0.5f, ez = (in[i + 5] - in[i + 2]) * 0.5f;
+        for(int row = 0 ; row < 3 ; ++row) {
+            int k = o + row * 4;
+            float c = m[k] * cx + m[k + 1] * cy + m[k + 2] * cz + m[k + 3];
+            float e = Math.abs(m[k]) * ex + Math.abs(m[k + 1]) * ey + Math.abs(m[k + 2]) * ez;
+            out[r + row] = c - e;
+            out[r + row + 3] = c + e;
+        }
+    }
+
+    // slab test, limited to hits closer than max
+    private static boolean intersects(float[] b, int i, Vector3f origin, Vector3f direction, float max) {
+        if(b[i] > b[i + 3]) return false;
+        float near = 0;
+        float far = max;
+        for(int axis = 0 ; axis < 3 ; ++axis) {
+            float o = axis == 0 ? origin.x : axis == 1 ? origin.y : origin.z;
+            float d = axis == 0 ? direction.x : axis == 1 ? direction.y : direction.z;
+            float min = b[i + axis];
+            float maxBound = b[i + axis + 3];
+            if(Math.abs(d) < 1e-12f) {
+                if(o < min || o > maxBound) return false;
+                continue;
+            }
+            float t0 = (min - o) / d;
+            float t1 = (maxBound - o) / d;
+            if(t0 > t1) {
+                float tmp = t0;
+                t0 = t1;
+                t1 = tmp;
+            }
+            if(t0 > near) near = t0;
+            if(t1 < far) far = t1;
+            if(near > far) return false;
+        }
+        return true;
+    }
+
+    // Moller-Trumbore, double sided; returns -1 on a miss
+    private static float intersectTriangle(float[] v, int a, int b, int c, Vector3f origin, Vector3f direction) {
+        float ox = origin.x, oy = origin.y, oz = origin.z;
+        float dx = direction.x, dy = direction.y, dz = direction.z;
+        float e1x = v[b] - v[a], e1y = v[b + 1] - v[a + 1], e1z = v[b + 2] - v[a + 2];
+        float e2x = v[c] - v[a], e2y = v[c + 1] - v[a + 1], e2z = v[c + 2] - v[a + 2];
+        float px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if(Math.abs(det) < 1e-9f) return -1;
+        float inv = 1 / det;
+        float tx = ox - v[a], ty = oy - v[a + 1], tz = oz - v[a + 2];
+        float u = (tx * px + ty * py + tz * pz) * inv;
+        if(u < 0 || u > 1) return -1;
+        float qx = ty * e1z - tz * e1y, qy = tz * e1x - tx * e1z, qz = tx * e1y - ty * e1x;
+        float w = (dx * qx + dy * qy + dz * qz) * inv;
+        if(w < 0 || u + w > 1) return -1;
+        float t = (e2x * qx + e2y * qy + e2z * qz) * inv;
+        return t >= 0 ? t : -1;
+    }
+
+    private static void clear(float[] b, int i) {
+        b[i] = b[i + 1] = b[i + 2] = Float.POSITIVE_INFINITY;
+        b[i + 3] = b[i + 4] = b[i + 5] = Float.NEGATIVE_INFINITY;
+    }
+
+    private static void include(float[] b, int i, float x, float y, float z) {
+        b[i] = Math.min(b[i], x);
+        b[i + 1] = Math.min(b[i + 1], y);
+        b[i + 2] = Math.min(b[i + 2], z);
+        b[i + 3] = Math.max(b[i + 3], x);
+        b[i + 4] = Math.max(b[i + 4], y);
+        b[i + 5] = Math.max(b[i + 5], z);
+    }
+
+    private static void union(float[] into, int i, float[] from, int f) {
+        into[i] = Math.min(into[i], from[f]);
+        into[i + 1] = Math.min(into[i + 1], from[f + 1]);
+        into[i + 2] = Math.min(into[i + 2], from[f + 2]);
+        into[i + 3] = Math.max(into[i + 3], from[f + 3]);
+        into[i + 4] = Math.max(into[i + 4], from[f + 4]);
+        into[i + 5] = Math.max(into[i + 5], from[f + 5]);
+    }
+
+    public static final class Hit {
+        private final float distance;
+        private final int mesh;
+        private final int triangle;
+
+        private Hit(float distance, int mesh, int triangle) {
+            this.distance = distance;
+            this.mesh = mesh;
+            this.triangle = triangle;
+        }
+
+        public float getDistance() { return this.distance; }
+        public int getMesh() { return this.mesh; }
+        public int getTriangle() { return this.triangle; }
+        public String toString() { return "Hit: " + distance + " mesh " + mesh + " tri " + triangle; }
+    }
+
+    private static final class TriangleGroup {
+        private final int[] joints;
+        private final int[] meshes;
+        private final int[] triangles;
+
+        private TriangleGroup(int[] joints, int[] meshes, int[] triangles) {
+            this.joints = joints;
+            this.meshes = meshes;
+            this.triangles = triangles;
+        }
+    }
+
+    // per-thread buffers so a query allocates nothing but the Hit it returns
+    private static final class Scratch {
+        private final float[] pose;
+        private final float[] bounds;
+        private final float[] subtree;
+        private final float[] group = new float[6];
+        private final int[] stack;
+        private final float[] vertices;
+        private final int[] stamps;
+        private int query;
+        private float best;
+        private int bestMesh;
+        private int bestTriangle;
+
+        private Scratch(int joints, int vertices) {
+            this.pose = new float[joints * MD5Skeleton.MATRIX_SIZE];
+            this.bounds = new float[joints * 6];
+            this.subtree = new float[joints * 6];
+            this.stack = new int[joints];
+            this.vertices = new float[vertices * 3];
+            this.stamps = new int[vertices];
+        }
+
+        private void nextQuery() {
+            if(++query == 0) {
+                Arrays.fill(stamps, 0);
+                query = 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package com.flamingfrenchman.mcmd5.client.model;
+
+import javax.annotation.Nullable;
+import javax.vecmath.Matrix4f;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Linear blend skinning over packed arrays. The bind pose is interleaved,
+ * BIND_STRIDE floats per vertex (position, normal, uv). Vertices are sorted into
+ * buckets by influence count at load time, see skinBucket. The palette holds one
+ * row-major 4x4 matrix per joint. Output is three floats per vertex for positions
+ * and normals; a null normal array skips normals entirely, for vertex formats that
+ * have none. Nothing here allocates, output goes into caller owned arrays.
+ */
+final class MD5Skinning {
+    static final int MATRIX_SIZE = 16;
+    static final int BIND_STRIDE = 8;
+    static final int POSITION = 0;
+    static final int NORMAL = 3;
+    static final int UV = 6;
+
+    private MD5Skinning() {}
+
+    // smallest vertex range handed to a worker when splitting a mesh
+    private static final int MIN_RANGE = 2048;
+    // shared by every model; leaves a core for the render thread
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    /*
+     * Anything that can skin a range of its vertices into shared output arrays,
+     * starting at vertex outBase in the output. outNormals may be null. Whatever
+     * every range shares for a palette is worked out once by prepare, before the
+     * ranges are split across threads, and handed to each of them.
+     */
+    interface Skinnable<P> {
+        int getVertexCount();
+
+        P prepare(float[] palette);
+
+        void skin(P prepared, float[] palette, float[] outPositions, @Nullable float[] outNormals, int outBase, int from, int to);
+    }
+
+    /*
+     * Skins several meshes back to back into the same output arrays; bases[i] is the
+     * first output vertex of meshes.get(i). Above the threshold (in total vertices)
+     * the work is split into per-mesh and per-range tasks on the shared pool,
+     * otherwise it stays on the calling thread.
+     */
+    static <P> void skinAll(List<? extends Skinnable<P>> meshes, int[] bases, float[] palette, float[] outPositions,
+                            @Nullable float[] outNormals, boolean parallel, int threshold) {
+        int total = 0;
+        for(Skinnable<P> mesh : meshes) total += mesh.getVertexCount();
+
+        if(!parallel || total < threshold || meshes.isEmpty()) {
+            for(int i = 0 ; i < meshes.size() ; ++i) {
+                Skinnable<P> mesh = meshes.get(i);
+                mesh.skin(mesh.prepare(palette), palette, outPositions, outNormals, bases[i], 0, mesh.getVertexCount());
+            }
+            return;
+        }
+
+        List<RangeTask<P>> tasks = new ArrayList<>(meshes.size());
+        for(int i = 0 ; i < meshes.size() ; ++i) {
+            Skinnable<P> mesh = meshes.get(i);
+            tasks.add(new RangeTask<>(mesh, mesh.prepare(palette), palette, outPositions, outNormals, bases[i], 0, mesh.getVertexCount()));
+        }
+        if(ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+        }
+        else {
+            POOL.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+
+    /*
+     * Skins vertices from until to of one influence bucket. Every vertex in a bucket
+     * has exactly width influences, stored back to back starting at influenceBase for
+     * the bucket's first vertex bucketStart, so the inner loop has a fixed trip count.
+     * Widths up to four get their own unrolled loops. Without outNormals only
+     * positions are skinned.
+     */
+    static void skinBucket(float[] bind, short[] joints, float[] biases, int width, int influenceBase, int bucketStart,
+                           float[] palette, float[] outPositions, @Nullable float[] outNormals, int outBase, int from, int to) {
+        int i = influenceBase + (from - bucketStart) * width;
+        switch(width) {
+            case 0:
+                // not bound to anything, stays in bind pose
+                for(int v = from ; v < to ; ++v) {
+                    int b = v * BIND_STRIDE;
+                    int o = (outBase + v) * 3;
+                    outPositions[o] = bind[b + POSITION];
+                    outPositions[o + 1] = bind[b + POSITION + 1];
+                    outPositions[o + 2] = bind[b + POSITION + 2];
+                    if(outNormals != null) writeNormal(outNormals, o, bind[b + NORMAL], bind[b + NORMAL + 1], bind[b + NORMAL + 2]);
+                }
+                break;
+            case 1:
+                skin1(bind, joints, biases, i, palette, outPositions, outNormals, from, to, outBase);
+                break;
+            case 2:
+                skin2(bind, joints, biases, i, palette, outPositions, outNormals, from, to, outBase);
+                break;
+            case 3:
+                skin3(bind, joints, biases, i, palette, outPositions, outNormals, from, to, outBase);
+                break;
+            case 4:
+                skin4(bind, joints, biases, i, palette, outPositions, outNormals, from, to, outBase);
+                break;
+            default:
+                skinN(bind, joints, biases, width, i, palette, outPositions, outNormals, from, to, outBase);
+        }
+    }
+
+    /*
+     * Vertices bound to a single joint with full bias: one matrix for the whole
+     * range, loaded once, and no blending. Normals only go through its upper 3x3.
+     */
+    static void skinRigid(float[] bind, int joint, float[] palette, float[] outPositions, @Nullable float[] outNormals,
+                          int outBase, int from, int to) {
+        int m = joint * MATRIX_SIZE;
+        float m00 = palette[m], m01 = palette[m + 1], m02 = palette[m + 2], m03 = palette[m + 3];
+        float m10 = palette[m + 4], m11 = palette[m + 5], m12 = palette[m + 6], m13 = palette[m + 7];
+        float m20 = palette[m + 8], m21 = palette[m + 9], m22 = palette[m + 10], m23 = palette[m + 11];
+        for(int v = from ; v < to ; ++v) {
+            int b = v * BIND_STRIDE;
+            int o = (outBase + v) * 3;
+            float x = bind[b + POSITION], y = bind[b + POSITION + 1], z = bind[b + POSITION + 2];
+            outPositions[o] = m00 * x + m01 * y + m02 * z + m03;
+            outPositions[o + 1] = m10 * x + m11 * y + m12 * z + m13;
+            outPositions[o + 2] = m20 * x + m21 * y + m22 * z + m23;
+            if(outNormals == null) continue;
+
+            float nx = bind[b + NORMAL], ny = bind[b + NORMAL + 1], nz = bind[b + NORMAL + 2];
+            writeNormal(outNormals, o, m00 * nx + m01 * ny + m02 * nz, m10 * nx + m11 * ny + m12 * nz, m20 * nx + m21 * ny + m22 * nz);
+        }
+    }
+
+    private static void skin1(float[] bind, short[] joints, float[] biases, int i, float[] palette,
+                              float[] outPositions, @Nullable float[] outNormals, int from, int to, int outBase) {
+        for(int v = from ; v < to ; ++v, i += 1) {
+            int b = v * BIND_STRIDE;
+            int o = (outBase + v) * 3;
+            float x = bind[b + POSITION], y = bind[b + POSITION + 1], z = bind[b + POSITION + 2];
+            int m0 = joints[i] * MATRIX_SIZE;
+            float w0 = biases[i];
+            outPositions[o] = w0 * (palette[m0] * x + palette[m0 + 1] * y + palette[m0 + 2] * z + palette[m0 + 3]);
+            outPositions[o + 1] = w0 * (palette[m0 + 4] * x + palette[m0 + 5] * y + palette[m0 + 6] * z + palette[m0 + 7]);
+            outPositions[o + 2] = w0 * (palette[m0 + 8] * x + palette[m0 + 9] * y + palette[m0 + 10] * z + palette[m0 + 11]);
+            if(outNormals == null) continue;
+
+            float nx = bind[b + NORMAL], ny = bind[b + NORMAL + 1], nz = bind[b + NORMAL + 2];
+            float qx = w0 * (palette[m0] * nx + palette[m0 + 1] * ny + palette[m0 + 2] * nz);
+            float qy = w0 * (palette[m0 + 4] * nx + palette[m0 + 5] * ny + palette[m0 + 6] * nz);
+            float qz = w0 * (palette[m0 + 8] * nx + palette[m0 + 9] * ny + palette[m0 + 10] * nz);
+            writeNormal(outNormals, o, qx, qy, qz);
+        }
+    }
+
+    private static void skin2(float[] bind, short[] joints, float[] biases, int i, float[] palette,
+                              float[] outPositions, @Nullable float[] outNormals, int from, int to, int outBase) {
+        for(int v = from ; v < to ; ++v, i += 2) {
+            int b = v * BIND_STRIDE;
+            int o = (outBase + v) * 3;
+            float x = bind[b + POSITION], y = bind[b + POSITION + 1], z = bind[b + POSITION + 2];
+            int m0 = joints[i] * MATRIX_SIZE;
+            float w0 = biases[i];
+            int m1 = joints[i + 1] * MATRIX_SIZE;
+            float w1 = biases[i + 1];
+            outPositions[o] = w0 * (palette[m0] * x + palette[m0 + 1] * y + palette[m0 + 2] * z + palette[m0 + 3])
+                    + w1 * (palette[m1] * x + palette[m1 + 1] * y + palette[m1 + 2] * z + palette[m1 + 3]);
+            outPositions[o + 1] = w0 * (palette[m0 + 4] * x + palette[m0 + 5] * y + palette[m0 + 6] * z + palette[m0 + 7])
+                    + w1 * (palette[m1 + 4] * x + palette[m1 + 5] * y + palette[m1 + 6] * z + palette[m1 + 7]);
+            outPositions[o + 2] = w0 * (palette[m0 + 8] * x + palette[m0 + 9] * y + palette[m0 + 10] * z + palette[m0 + 11])
+                    + w1 * (palette[m1 + 8] * x + palette[m1 + 9] * y + palette[m1 + 10] * z + palette[m1 + 11]);
+            if(outNormals == null) continue;
+
+            float nx = bind[b + NORMAL], ny = bind[b + NORMAL + 1], nz = bind[b + NORMAL + 2];
+            float qx = w0 * (palette[m0] * nx + palette[m0 + 1] * ny + palette[m0 + 2] * nz)
+                    + w1 * (palette[m1] * nx + palette[m1 + 1] * ny + palette[m1 + 2] * nz);
+            float qy = w0 * (palette[m0 + 4] * nx + palette[m0 + 5] * ny + palette[m0 + 6] * nz)
+                    + w1 * (palette[m1 + 4] * nx + palette[m1 + 5] * ny + palette[m1 + 6] * nz);
+            float qz = w0 * (palette[m0 + 8] * nx + palette[m0 + 9] * ny + palette[m0 + 10] * nz)
+                    + w1 * (palette[m1 + 8] * nx + palette[m1 + 9] * ny + palette[m1 + 10] * nz);
+            writeNormal(outNormals, o, qx, qy, qz);
+        }
+    }
+
+    private static void skin3(float[] bind, short[] joints, float[] biases, int i, float[] palette,
+                              float[] outPositions, @Nullable float[] outNormals, int from, int to, int outBase) {
+        for(int v = from ; v < to ; ++v, i += 3) {
+            int b = v * BIND_STRIDE;
+            int o = (outBase + v) * 3;
+            float x = bind[b + POSITION], y = bind[b + POSITION + 1], z = bind[b + POSITION + 2];
+            int m0 = joints[i] * MATRIX_SIZE;
+            float w0 = biases[i];
+            int m1 = joints[i + 1] * MATRIX_SIZE;
+            float w1 = biases[i + 1];
+            int m2 = joints[i + 2] * MATRIX_SIZE;
+            float w2 = biases[i + 2];
+            outPositions[o] = w0 * (palette[m0] * x + palette[m0 + 1] * y + palette[m0 + 2] * z + palette[m0 + 3])
+                    + w1 * (palette[m1] * x + palette[m1 + 1] * y + palette[m1 + 2] * z + palette[m1 + 3])
+                    + w2 * (palette[m2] * x + palette[m2 + 1] * y + palette[m2 + 2] * z + palette[m2 + 3]);
+            outPositions[o + 1] = w0 * (palette[m0 + 4] * x + palette[m0 + 5] * y + palette[m0 + 6] * z + palette[m0 + 7])
+                    + w1 * (palette[m1 + 4] * x + palette[m1 + 5] * y + palette[m1 + 6] * z + palette[m1 + 7])
+                    + w2 * (palette[m2 + 4] * x + palette[m2 + 5] * y + palette[m2 + 6] * z + palette[m2 + 7]);
+            outPositions[o + 2] = w0 * (palette[m0 + 8] * x + palette[m0 + 9] * y + palette[m0 + 10] * z + palette[m0 + 11])
+                    + w1 * (palette[m1 + 8] * x + palette[m1 + 9] * y + palette[m1 + 10] * z + palette[m1 + 11])
+                    + w2 * (palette[m2 + 8] * x + palette[m2 + 9] * y + palette[m2 + 10] * z + palette[m2 + 11]);
+            if(outNormals == null) continue;
+
+            float nx = bind[b + NORMAL], ny = bind[b + NORMAL + 1], nz = bind[b + NORMAL + 2];
+            float qx = w0 * (palette[m0] * nx + palette[m0 + 1] * ny + palette[m0 + 2] * nz)
+                    + w1 * (palette[m1] * nx + palette[m1 + 1] * ny + palette[m1 + 2] * nz)
+                    + w2 * (palette[m2] * nx + palette[m2 + 1] * ny + palette[m2 + 2] * nz);
+            float qy = w0 * (palette[m0 + 4] * nx + palette[m0 + 5] * ny + palette[m0 + 6] * nz)
+                    + w1 * (palette[m1 + 4] * nx + palette[m1 + 5] * ny + palette[m1 + 6] * nz)
+                    + w2 * (palette[m2 + 4] * nx + palette[m2 + 5] * ny + palette[m2 + 6] * nz);
+            float qz = w0 * (palette[m0 + 8] * nx + palette[m0 + 9] * ny + palette[m0 + 10] * nz)
+                    + w1 * (palette[m1 + 8] * nx + palette[m1 + 9] * ny + palette[m1 + 10] * nz)
+                    + w2 * (palette[m2 + 8] * nx + palette[m2 + 9] * ny + palette[m2 + 10] * nz);
+            writeNormal(outNormals, o, qx, qy, qz);
+        }
+    }
+
+    private static void skin4(float[] bind, short[] joints, float[] biases, int i, float[] palette,
+                              float[] outPositions, @Nullable float[] outNormals, int from, int to, int outBase) {
+        for(int v = from ; v < to ; ++v, i += 4) {
+            int b = v * BIND_STRIDE;
+            int o = (outBase + v) * 3;
+            float x = bind[b + POSITION], y = bind[b + POSITION + 1], z = bind[b + POSITION + 2];
+            int m0 = joints[i] * MATRIX_SIZE;
+            float w0 = biases[i];
+            int m1 = joints[i + 1] * MATRIX_SIZE;
+            float w1 = biases[i + 1];
+            int m2 = joints[i + 2] * MATRIX_SIZE;
+            float w2 = biases[i + 2];
+            int m3 = joints[i + 3] * MATRIX_SIZE;
+            float w3 = biases[i + 3];
+            outPositions[o] = w0 * (palette[m0] * x + palette[m0 + 1] * y + palette[m0 + 2] * z + palette[m0 + 3])
+                    + w1 * (palette[m1] * x + palette[m1 + 1] * y + palette[m1 + 2] * z + palette[m1 + 3])
+                    + w2 * (palette[m2] * x + palette[m2 + 1] * y + palette[m2 + 2] * z + palette[m2 + 3])
+                    + w3 * (palette[m3] * x + palette[m3 + 1] * y + palette[m3 + 2] * z + palette[m3 + 3]);
+            outPositions[o + 1] = w0 * (palette[m0 + 4] * x + palette[m0 + 5] * y + palette[m0 + 6] * z + palette[m0 + 7])
+                    + w1 * (palette[m1 + 4] * x + palette[m1 + 5] * y + palette[m1 + 6] * z + palette[m1 + 7])
+                    + w2 * (palette[m2 + 4] * x + palette[m2 + 5] * y + palette[m2 + 6] * z + palette[m2 + 7])
+                    + w3 * (palette[m3 + 4] * x + palette[m3 + 5] * y + palette[m3 + 6] * z + palette[m3 + 7]);
+            outPositions[o + 2] = w0 * (palette[m0 + 8] * x + palette[m0 + 9] * y + palette[m0 + 10] * z + palette[m0 + 11])
+                    + w1 * (palette[m1 + 8] * x + palette[m1 + 9] * y + palette[m1 + 10] * z + palette[m1 + 11])
+                    + w2 * (palette[m2 + 8] * x + palette[m2 + 9] * y + palette[m2 + 10] * z + palette[m2 + 11])
+                    + w3 * (palette[m3 + 8] * x + palette[m3 + 9] * y + palette[m3 + 10] * z + palette[m3 + 11]);
+            if(outNormals == null) continue;
+
+            float nx = bind[b + NORMAL], ny = bind[b + NORMAL + 1], nz = bind[b + NORMAL + 2];
+            float qx = w0 * (palette[m0] * nx + palette[m0 + 1] * ny + palette[m0 + 2] * nz)
+                    + w1 * (palette[m1] * nx + palette[m1 + 1] * ny + palette[m1 + 2] * nz)
+                    + w2 * (palette[m2] * nx + palette[m2 + 1] * ny + palette[m2 + 2] * nz)
+                    + w3 * (palette[m3] * nx + palette[m3 + 1] * ny + palette[m3 + 2] * nz);
+            float qy = w0 * (palette[m0 + 4] * nx + palette[m0 + 5] * ny + palette[m0 + 6] * nz)
+                    + w1 * (palette[m1 + 4] * nx + palette[m1 + 5] * ny + palette[m1 + 6] * nz)
+                    + w2 * (palette[m2 + 4] * nx + palette[m2 + 5] * ny + palette[m2 + 6] * nz)
+                    + w3 * (palette[m3 + 4] * nx + palette[m3 + 5] * ny + palette[m3 + 6] * nz);
+            float qz = w0 * (palette[m0 + 8] * nx + palette[m0 + 9] * ny + palette[m0 + 10] * nz)
+                    + w1 * (palette[m1 + 8] * nx + palette[m1 + 9] * ny + palette[m1 + 10] * nz)
+                    + w2 * (palette[m2 + 8] * nx + palette[m2 + 9] * ny + palette[m2 + 10] * nz)
+                    + w3 * (palette[m3 + 8] * nx + palette[m3 + 9] * ny + palette[m3 + 10] * nz);
+            writeNormal(outNormals, o, qx, qy, qz);
+        }
+    }
+
+    private static void skinN(float[] bind, short[] joints, float[] biases, int width, int i, float[] palette,
+                              float[] outPositions, @Nullable float[] outNormals, int from, int to, int outBase) {
+        for(int v = from ; v < to ; ++v, i += width) {
+            int b = v * BIND_STRIDE;
+            int o = (outBase + v) * 3;
+            float x = bind[b + POSITION], y = bind[b + POSITION + 1], z = bind[b + POSITION + 2];
+            float px = 0, py = 0, pz = 0;
+            for(int k = i ; k < i + width ; ++k) {
+                int m = joints[k] * MATRIX_SIZE;
+                float w = biases[k];
+                px += w * (palette[m] * x + palette[m + 1] * y + palette[m + 2] * z + palette[m + 3]);
+                py += w * (palette[m + 4] * x + palette[m + 5] * y + palette[m + 6] * z + palette[m + 7]);
+                pz += w * (palette[m + 8] * x + palette[m + 9] * y + palette[m + 10] * z + palette[m + 11]);
+            }
+            outPositions[o] = px;
+            outPositions[o + 1] = py;
+            outPositions[o + 2] = pz;
+            if(outNormals == null) continue;
+
+            float nx = bind[b + NORMAL], ny = bind[b + NORMAL + 1], nz = bind[b + NORMAL + 2];
+            float qx = 0, qy = 0, qz = 0;
+            for(int k = i ; k < i + width ; ++k) {
+                int m = joints[k] * MATRIX_SIZE;
+                float w = biases[k];
+                qx += w * (palette[m] * nx + palette[m + 1] * ny + palette[m + 2] * nz);
+                qy += w * (palette[m + 4] * nx + palette[m + 5] * ny + palette[m + 6] * nz);
+                qz += w * (palette[m + 8] * nx + palette[m + 9] * ny + palette[m + 10] * nz);
+            }
+            writeNormal(outNormals, o, qx, qy, qz);
+        }
+    }
+
+    // stores a skinned normal, normalized
+    private static void writeNormal(float[] outNormals, int o, float qx, float qy, float qz) {
+        float len = (float) Math.sqrt(qx * qx + qy * qy + qz * qz);
+        if(len > 1e-12f) {
+            qx /= len;
+            qy /= len;
+            qz /= len;
+        }
+        outNormals[o] = qx;
+        outNormals[o + 1] = qy;
+        outNormals[o + 2] = qz;
+    }
+
+    private static final class RangeTask<P> extends RecursiveAction {
+        private final Skinnable<P> mesh;
+        private final P prepared;
+        private final float[] palette;
+        private final float[] outPositions;
+        @Nullable
+        private final float[] outNormals;
+        private final int outBase;
+        private final int from;
+        private final int to;
+
+        private RangeTask(Skinnable<P> mesh, P prepared, float[] palette, float[] outPositions, @Nullable float[] outNormals,
+                          int outBase, int from, int to) {
+            this.mesh = mesh;
+            this.prepared = prepared;
+            this.palette = palette;
+            this.outPositions = outPositions;
+            this.outNormals = outNormals;
+            this.outBase = outBase;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= MIN_RANGE) {
+                mesh.skin(prepared, palette, outPositions, outNormals, outBase, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask<>(mesh, prepared, palette, outPositions, outNormals, outBase, from, mid),
+                    new RangeTask<>(mesh, prepared, palette, outPositions, outNormals, outBase, mid, to));
+        }
+    }
+
+    /*
+     * Skinned output kept between evaluations of one animated instance, together
+     * with the palette it was skinned with. Only one thread may use it at a time.
+     */
+    static final class Incremental {
+        float[] positions = new float[0];
+        float[] normals = new float[0];
+        final BitSet dirty = new BitSet();
+        private final BitSet changed = new BitSet();
+        private float[] palette = new float[0];
+        private boolean valid;
+        private boolean withNormals;
+        // palette straight from the state, before any joint overrides, and what it was evaluated for
+        @Nullable
+        private Object baseKey;
+        private float[] base = new float[0];
+
+        /*
+         * Takes the new palette and returns the joints whose matrix differs from the
+         * last one, or null when the output has to be skinned in full.
+         */
+        @Nullable
+        BitSet update(float[] newPalette, int joints, int vertices, boolean normals) {
+            boolean full = !valid || (normals && !withNormals) || palette.length != joints * MATRIX_SIZE
+                    || positions.length != vertices * 3;
+            if(positions.length != vertices * 3) {
+                this.positions = new float[vertices * 3];
+                this.normals = new float[vertices * 3];
+            }
+            if(palette.length != joints * MATRIX_SIZE) palette = new float[joints * MATRIX_SIZE];
+
+            changed.clear();
+            for(int j = 0 ; j < joints ; ++j) {
+                int o = j * MATRIX_SIZE;
+                for(int e = o ; e < o + MATRIX_SIZE ; ++e) {
+                    if(Float.compare(palette[e], newPalette[e]) != 0) {
+                        changed.set(j);
+                        System.arraycopy(newPalette, o, palette, o, MATRIX_SIZE);
+                        break;
+                    }
+                }
+            }
+            valid = true;
+            withNormals = normals;
+            return full ? null : changed;
+        }
+
+        // the output no longer matches the palette, next update skins everything
+        void invalidate() {
+            valid = false;
+        }
+
+        // copies the stored base palette into palette if it was evaluated for key
+        boolean restoreBase(Object key, float[] palette, int joints) {
+            if(baseKey == null || !baseKey.equals(key) || base.length != joints * MATRIX_SIZE) return false;
+            System.arraycopy(base, 0, palette, 0, base.length);
+            return true;
+        }
+
+        void storeBase(Object key, float[] palette, int joints) {
+            if(base.length != joints * MATRIX_SIZE) base = new float[joints * MATRIX_SIZE];
+            System.arraycopy(palette, 0, base, 0, base.length);
+            baseKey = key;
+        }
+    }
+
+    /*
+     * Per-thread output and palette arrays. Chunk building can bake on several
+     * threads at once, and each one grows its own buffers until they stop changing.
+     */
+    static final class Buffers {
+        private static final ThreadLocal<Buffers> LOCAL = new ThreadLocal<Buffers>() {
+            @Override
+            protected Buffers initialValue() {
+                return new Buffers();
+            }
+        };
+
+        float[] positions = new float[0];
+        float[] normals = new float[0];
+        float[] palette = new float[0];
+        // scratch for applying joint overrides
+        final Matrix4f pose = new Matrix4f();
+        final Matrix4f delta = new Matrix4f();
+        final Matrix4f matrix = new Matrix4f();
+        boolean[] subtree = new boolean[0];
+        // override matrices by joint, null where there is none, for the overrides and joint names last resolved
+        Matrix4f[] overrideMatrices = new Matrix4f[0];
+        @Nullable
+        Object overridesFor;
+        @Nullable
+        Object namesFor;
+
+        static Buffers get() {
+            return LOCAL.get();
+        }
+
+        Buffers ensure(int vertices, int joints) {
+            if(positions.length < vertices * 3) {
+                this.positions = new float[vertices * 3];
+                this.normals = new float[vertices * 3];
+            }
+            if(palette.length < joints * MATRIX_SIZE) {
+                palette = new float[joints * MATRIX_SIZE];
+            }
+            return this;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.flamingfrenchman.mcmd5.proxy;
 
 import com.flamingfrenchman.mcmd5.Mcmd5;
 import com.flamingfrenchman.mcmd5.client.model.MD5Loader;
+import com.flamingfrenchman.mcmd5.client.model.MD5Pipeline;
+import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.client.model.ModelLoaderRegistry;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
@@ -16,7 +18,7 @@ public class ClientProxy extends CommonProxy {
 
     public void init(FMLInitializationEvent event)
     {
-
+        MinecraftForge.EVENT_BUS.register(MD5Pipeline.INSTANCE);
     }
 
     public void addClientLog(Level level, String msg) {
@@ -0,0 +1,231 @@
+package com.flamingfrenchman.mcmd5.skeleton;
+
+import javax.vecmath.Matrix4f;
+
+/*
+ * Joint hierarchy and animation channels of an MD5 model, without any mesh or
+ * texture data. Nothing in here touches client classes, so the dedicated server
+ * can evaluate where a limb is (per-bone hitboxes, sockets) for many entities
+ * without loading meshes.
+ *
+ * Poses are written as row-major 4x4 model-space matrices, 16 floats per joint.
+ */
+public final class MD5Skeleton {
+    public static final int MATRIX_SIZE = 16;
+
+    private final String[] names;
+    private final int[] parents;
+    // model-space bind pose, used when there is no animation
+    private final float[] bindPositions;
+    private final float[] bindOrientations;
+    // joint-local channels, one array per frame
+    private final float[][] framePositions;
+    private final float[][] frameOrientations;
+    private final float frameRate;
+
+    public MD5Skeleton(String[] names, int[] parents, float[] bindPositions, float[] bindOrientations,
+                       float[][] framePositions, float[][] frameOrientations, float frameRate) {
+        this.names = names;
+        this.parents = parents;
+        this.bindPositions = bindPositions;
+        this.bindOrientations = bindOrientations;
+        this.framePositions = framePositions;
+        this.frameOrientations = frameOrientations;
+        this.frameRate = frameRate;
+        for(int i = 0 ; i < parents.length ; ++i) {
+            if(parents[i] >= i) throw new IllegalArgumentException("MD5 joint " + names[i] + " is listed before its parent");
+        }
+    }
+
+    public int getJointCount() { return names.length; }
+    public String getJointName(int joint) { return names[joint]; }
+    public int getParent(int joint) { return parents[joint]; }
+    public int getFrameCount() { return framePositions.length; }
+    public float getFrameRate() { return frameRate; }
+    public boolean isAnimated() { return framePositions.length > 0; }
+
+    public float getDuration() {
+        return frameRate > 0 ? framePositions.length / frameRate : 0;
+    }
+
+    /*
+     * Returns the index of the named joint, or -1. Quotes from the md5 files are
+     * accepted but not required.
+     */
+    public int getJointIndex(String name) {
+        String unquoted = unquote(name);
+        for(int i = 0 ; i < names.length ; ++i) {
+            if(names[i].equals(unquoted)) return i;
+        }
+        return -1;
+    }
+
+    // root first, so a chain can be folded down to the joint in one pass
+    public int[] getChain(int joint) {
+        int depth = 0;
+        for(int i = joint ; i > -1 ; i = parents[i]) ++depth;
+        int[] chain = new int[depth];
+        for(int i = joint ; i > -1 ; i = parents[i]) chain[--depth] = i;
+        return chain;
+    }
+
+    /*
+     * Evaluates every joint at the given clip time in seconds, looping the clip.
+     * out must hold getJointCount() * MATRIX_SIZE floats.
+     */
+    public void evaluate(float time, float[] out) {
+        if(!isAnimated() || frameRate <= 0) {
+            evaluate(0, 0, 0, out);
+            return;
+        }
+        float position = time * frameRate;
+        int frame = (int) Math.floor(position);
+        evaluate(frame, frame + 1, position - frame, out);
+    }
+
+    /*
+     * Evaluates every joint between two frames. Parents always precede their
+     * children in md5 files, so one forward pass resolves the whole hierarchy.
+     * Each joint's slot in out doubles as scratch space, so nothing is allocated.
+     */
+    public void evaluate(int frame, int nextFrame, float progress, float[] out) {
+        for(int joint = 0 ; joint < names.length ; ++joint) {
+            int m = joint * MATRIX_SIZE;
+            sampleLocal(joint, frame, nextFrame, progress, out, m);
+            writeMatrix(out, m, out, m);
+            int parent = parents[joint];
+            if(parent > -1 && isAnimated()) {
+                multiply(out, parent * MATRIX_SIZE, out, m);
+            }
+        }
+    }
+
+    /*
+     * Evaluates only the given ancestor chain (see getChain) and writes the
+     * model-space transform of its last joint into out at offset.
+     */
+    public void evaluateChain(int[] chain, int frame, int nextFrame, float progress, float[] out, int offset) {
+        if(!isAnimated()) {
+            sampleLocal(chain[chain.length - 1], 0, 0, 0, out, offset);
+        }
+        else {
+            // accumulated pose in the first 7 floats, current local pose in the next 7
+            int local = offset + 7;
+            out[offset] = out[offset + 1] = out[offset + 2] = 0;
+            out[offset + 3] = out[offset + 4] = out[offset + 5] = 0;
+            out[offset + 6] = 1;
+            for(int joint : chain) {
+                sampleLocal(joint, frame, nextFrame, progress, out, local);
+                concatenate(out[offset], out[offset + 1], out[offset + 2],
+                        out[offset + 3], out[offset + 4], out[offset + 5], out[offset + 6], out, local);
+                System.arraycopy(out, local, out, offset, 7);
+            }
+        }
+        writeMatrix(out, offset, out, offset);
+    }
+
+    public void evaluateChain(int[] chain, int frame, int nextFrame, float progress, Matrix4f out) {
+        float[] m = new float[MATRIX_SIZE];
+        evaluateChain(chain, frame, nextFrame, progress, m, 0);
+        out.set(m);
+    }
+
+    // writes position xyz and orientation xyzw of the joint relative to its parent
+    private void sampleLocal(int joint, int frame, int nextFrame, float progress, float[] out, int o) {
+        int p = joint * 3;
+        int q = joint * 4;
+        if(!isAnimated()) {
+            System.arraycopy(bindPositions, p, out, o, 3);
+            System.arraycopy(bindOrientations, q, out, o + 3, 4);
+            return;
+        }
+
+        int frames = framePositions.length;
+        float[] p0 = framePositions[Math.floorMod(frame, frames)];
+        float[] p1 = framePositions[Math.floorMod(nextFrame, frames)];
+        float[] r0 = frameOrientations[Math.floorMod(frame, frames)];
+        float[] r1 = frameOrientations[Math.floorMod(nextFrame, frames)];
+        float t = progress < 0 ? 0 : progress > 1 ? 1 : progress;
+
+        out[o] = p0[p] + (p1[p] - p0[p]) * t;
+        out[o + 1] = p0[p + 1] + (p1[p + 1] - p0[p + 1]) * t;
+        out[o + 2] = p0[p + 2] + (p1[p + 2] - p0[p + 2]) * t;
+
+        // nlerp along the shorter arc; close enough between adjacent frames
+        float sign = r0[q] * r1[q] + r0[q + 1] * r1[q + 1] + r0[q + 2] * r1[q + 2] + r0[q + 3] * r1[q + 3] < 0 ? -1 : 1;
+        float rx = r0[q] + (r1[q] * sign - r0[q]) * t;
+        float ry = r0[q + 1] + (r1[q + 1] * sign - r0[q + 1]) * t;
+        float rz = r0[q + 2] + (r1[q + 2] * sign - r0[q + 2]) * t;
+        float rw = r0[q + 3] + (r1[q + 3] * sign - r0[q + 3]) * t;
+        float len = (float) Math.sqrt(rx * rx + ry * ry + rz * rz + rw * rw);
+        if(len > 1e-6f) {
+            rx /= len; ry /= len; rz /= len; rw /= len;
+        }
+        out[o + 3] = rx;
+        out[o + 4] = ry;
+        out[o + 5] = rz;
+        out[o + 6] = rw;
+    }
+
+    // replaces the local pose at o with parent * local
+    private static void concatenate(float px, float py, float pz, float qx, float qy, float qz, float qw, float[] local, int o) {
+        float lx = local[o], ly = local[o + 1], lz = local[o + 2];
+        float rx = local[o + 3], ry = local[o + 4], rz = local[o + 5], rw = local[o + 6];
+
+        // position: parent position + parent rotation applied to local offset
+        float tx = 2 * (qy * lz - qz * ly);
+        float ty = 2 * (qz * lx - qx * lz);
+        float tz = 2 * (qx * ly - qy * lx);
+        local[o] = px + lx + qw * tx + (qy * tz - qz * ty);
+        local[o + 1] = py + ly + qw * ty + (qz * tx - qx * tz);
+        local[o + 2] = pz + lz + qw * tz + (qx * ty - qy * tx);
+
+        local[o + 3] = qw * rx + qx * rw + qy * rz - qz * ry;
+        local[o + 4] = qw * ry - qx * rz + qy * rw + qz * rx;
+        local[o + 5] = qw * rz + qx * ry - qy * rx + qz * rw;
+        local[o + 6] = qw * rw - qx * rx - qy * ry - qz * rz;
+    }
+
+    // replaces the matrix at c with the matrix at p times it; both are rigid 3x4
+    private static void multiply(float[] parent, int p, float[] child, int c) {
+        float b00 = child[c], b01 = child[c + 1], b02 = child[c + 2], b03 = child[c + 3];
+        float b10 = child[c + 4], b11 = child[c + 5], b12 = child[c + 6], b13 = child[c + 7];
+        float b20 = child[c + 8], b21 = child[c + 9], b22 = child[c + 10], b23 = child[c + 11];
+        for(int row = 0 ; row < 12 ; row += 4) {
+            float a0 = parent[p + row], a1 = parent[p + row + 1], a2 = parent[p + row + 2], a3 = parent[p + row + 3];
+            child[c + row] = a0 * b00 + a1 * b10 + a2 * b20;
+            child[c + row + 1] = a0 * b01 + a1 * b11 + a2 * b21;
+            child[c + row + 2] = a0 * b02 + a1 * b12 + a2 * b22;
+            child[c + row + 3] = a0 * b03 + a1 * b13 + a2 * b23 + a3;
+        }
+    }
+
+    // reads the whole pose before writing, so pose and out may share a slot
+    private static void writeMatrix(float[] pose, int o, float[] out, int m) {
+        float px = pose[o], py = pose[o + 1], pz = pose[o + 2];
+        float qx = pose[o + 3], qy = pose[o + 4], qz = pose[o + 5], qw = pose[o + 6];
+        out[m] = 1 - 2 * (qy * qy + qz * qz);
+        out[m + 1] = 2 * (qx * qy - qz * qw);
+        out[m + 2] = 2 * (qx * qz + qy * qw);
+        out[m + 3] = px;
+        out[m + 4] = 2 * (qx * qy + qz * qw);
+        out[m + 5] = 1 - 2 * (qx * qx + qz * qz);
+        out[m + 6] = 2 * (qy * qz - qx * qw);
+        out[m + 7] = py;
+        out[m + 8] = 2 * (qx * qz - qy * qw);
+        out[m + 9] = 2 * (qy * qz + qx * qw);
+        out[m + 10] = 1 - 2 * (qx * qx + qy * qy);
+        out[m + 11] = pz;
+        out[m + 12] = 0;
+        out[m + 13] = 0;
+        out[m + 14] = 0;
+        out[m + 15] = 1;
+    }
+
+    public static String unquote(String name) {
+        if(name.length() > 1 && name.startsWith("\"") && name.endsWith("\"")) {
+            return name.substring(1, name.length() - 1);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,74 @@
+package com.flamingfrenchman.mcmd5.skeleton;
+
+import com.flamingfrenchman.mcmd5.Mcmd5;
+import net.minecraft.util.ResourceLocation;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.Level;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Loads skeletons straight from the mod jar's assets, since the dedicated server
+ * has no resource manager. The anim file is found the same way the client
+ * parser does it: an "anim" line in the mesh, or the mesh path with .md5anim.
+ */
+public enum MD5SkeletonLoader {
+
+    INSTANCE;
+
+    private final Map<ResourceLocation, MD5Skeleton> cache = new ConcurrentHashMap<>();
+
+    /*
+     * location is the .md5mesh, e.g. mcmd5:models/item/monster.md5mesh.
+     * Returns null (and logs) if the files can't be read.
+     */
+    @Nullable
+    public MD5Skeleton getSkeleton(ResourceLocation location) {
+        MD5Skeleton skeleton = cache.get(location);
+        if(skeleton == null) {
+            skeleton = load(location);
+            if(skeleton != null) cache.put(location, skeleton);
+        }
+        return skeleton;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    @Nullable
+    private static MD5Skeleton load(ResourceLocation location) {
+        InputStream mesh = null;
+        InputStream anim = null;
+        try {
+            mesh = open(location.getResourceDomain(), location.getResourcePath());
+            if(mesh == null) {
+                Mcmd5.logger.log(Level.WARN, "Could not find md5 mesh " + location + " for skeleton");
+                return null;
+            }
+            String animPath = MD5SkeletonParser.findAnimReference(mesh);
+            IOUtils.closeQuietly(mesh);
+            anim = open(location.getResourceDomain(),
+                    animPath != null ? animPath : location.getResourcePath().replace(".md5mesh", ".md5anim"));
+            mesh = open(location.getResourceDomain(), location.getResourcePath());
+            return MD5SkeletonParser.parse(mesh, anim);
+        }
+        catch(IOException | RuntimeException e) {
+            Mcmd5.logger.log(Level.ERROR, "Error loading md5 skeleton " + location, e);
+            return null;
+        }
+        finally {
+            IOUtils.closeQuietly(mesh);
+            IOUtils.closeQuietly(anim);
+        }
+    }
+
+    @Nullable
+    private static InputStream open(String domain, String path) {
+        return MD5SkeletonLoader.class.getResourceAsStream("/assets/" + domain + "/" + path);
+    }
+}
@@ -0,0 +1,208 @@
+package com.flamingfrenchman.mcmd5.skeleton;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/*
+ * Reads only the joints of a .md5mesh and the hierarchy and frames of a .md5anim.
+ * Mesh blocks are skipped without being parsed, and nothing here depends on
+ * resource managers or rendering classes, so it is safe on the dedicated server.
+ */
+public final class MD5SkeletonParser {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private MD5SkeletonParser() {}
+
+    /*
+     * Returns the anim file named by the mesh's "anim" line, if it has one.
+     */
+    @Nullable
+    public static String findAnimReference(InputStream mesh) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(mesh));
+        for(String line ; (line = reader.readLine()) != null; ) {
+            line = stripComment(line).trim();
+            if(line.startsWith("anim ")) {
+                return MD5Skeleton.unquote(line.substring("anim ".length()).trim());
+            }
+            if(line.startsWith("joints") || line.startsWith("mesh")) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public static MD5Skeleton parse(InputStream mesh, @Nullable InputStream anim) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        List<float[]> bind = new ArrayList<>();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(mesh));
+        for(String line ; (line = reader.readLine()) != null; ) {
+            line = stripComment(line).trim();
+            if(line.startsWith("joints")) {
+                while((line = reader.readLine()) != null && !line.contains("}")) {
+                    String[] tokens = tokenize(line);
+                    if(tokens.length < 11) continue;
+                    names.add(MD5Skeleton.unquote(tokens[0]));
+                    parents.add(Integer.parseInt(tokens[1]));
+                    bind.add(new float[] {
+                            Float.parseFloat(tokens[3]), Float.parseFloat(tokens[4]), Float.parseFloat(tokens[5]),
+                            Float.parseFloat(tokens[8]), Float.parseFloat(tokens[9]), Float.parseFloat(tokens[10])
+                    });
+                }
+            }
+            else if(line.startsWith("mesh")) {
+                skipBlock(reader);
+            }
+        }
+
+        float[] bindPositions = new float[names.size() * 3];
+        float[] bindOrientations = new float[names.size() * 4];
+        for(int i = 0 ; i < bind.size() ; ++i) {
+            float[] b = bind.get(i);
+            bindPositions[i * 3] = b[0];
+            bindPositions[i * 3 + 1] = b[1];
+            bindPositions[i * 3 + 2] = b[2];
+            writeQuaternion(b[3], b[4], b[5], bindOrientations, i * 4);
+        }
+
+        if(anim == null) {
+            return new MD5Skeleton(names.toArray(new String[0]), toIntArray(parents),
+                    bindPositions, bindOrientations, new float[0][], new float[0][], 0);
+        }
+        return parseAnim(anim, bindPositions, bindOrientations);
+    }
+
+    private static MD5Skeleton parseAnim(InputStream anim, float[] bindPositions, float[] bindOrientations) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        List<Integer> flags = new ArrayList<>();
+        List<Integer> startIndices = new ArrayList<>();
+        float[] basePositions = null;
+        float[] baseOrientations = null;
+        float[][] framePositions = new float[0][];
+        float[][] frameOrientations = new float[0][];
+        float frameRate = 24;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(anim));
+        for(String line ; (line = reader.readLine()) != null; ) {
+            line = stripComment(line).trim();
+            if(line.isEmpty()) continue;
+            String[] tokens = tokenize(line);
+
+            if(tokens[0].equals("numFrames")) {
+                int numFrames = Integer.parseInt(tokens[1]);
+                framePositions = new float[numFrames][];
+                frameOrientations = new float[numFrames][];
+            }
+            else if(tokens[0].equals("frameRate")) {
+                frameRate = Float.parseFloat(tokens[1]);
+            }
+            else if(tokens[0].equals("hierarchy")) {
+                while((line = reader.readLine()) != null && !line.contains("}")) {
+                    String[] joint = tokenize(line);
+                    if(joint.length < 4) continue;
+                    names.add(MD5Skeleton.unquote(joint[0]));
+                    parents.add(Integer.parseInt(joint[1]));
+                    flags.add(Integer.parseInt(joint[2]));
+                    startIndices.add(Integer.parseInt(joint[3]));
+                }
+            }
+            else if(tokens[0].equals("bounds")) {
+                skipBlock(reader);
+            }
+            else if(tokens[0].equals("baseframe")) {
+                basePositions = new float[names.size() * 3];
+                baseOrientations = new float[names.size() * 4];
+                int joint = 0;
+                while((line = reader.readLine()) != null && !line.contains("}")) {
+                    String[] base = tokenize(line);
+                    if(base.length < 10 || joint >= names.size()) continue;
+                    basePositions[joint * 3] = Float.parseFloat(base[1]);
+                    basePositions[joint * 3 + 1] = Float.parseFloat(base[2]);
+                    basePositions[joint * 3 + 2] = Float.parseFloat(base[3]);
+                    writeQuaternion(Float.parseFloat(base[6]), Float.parseFloat(base[7]), Float.parseFloat(base[8]),
+                            baseOrientations, joint * 4);
+                    ++joint;
+                }
+            }
+            else if(tokens[0].equals("frame")) {
+                if(basePositions == null) throw new IOException("MD5 frame defined before baseframe");
+                int frame = Integer.parseInt(tokens[1]);
+                StringBuilder data = new StringBuilder();
+                while((line = reader.readLine()) != null && !line.contains("}")) {
+                    data.append(line).append(' ');
+                }
+                String[] components = tokenize(data.toString());
+                float[] positions = basePositions.clone();
+                float[] orientations = new float[names.size() * 4];
+                for(int joint = 0 ; joint < names.size() ; ++joint) {
+                    int jointFlags = flags.get(joint);
+                    int index = startIndices.get(joint);
+                    int b = joint * 4;
+                    float qx = baseOrientations[b], qy = baseOrientations[b + 1], qz = baseOrientations[b + 2];
+                    if((jointFlags & 1) != 0) positions[joint * 3] = Float.parseFloat(components[index++]);
+                    if((jointFlags & 2) != 0) positions[joint * 3 + 1] = Float.parseFloat(components[index++]);
+                    if((jointFlags & 4) != 0) positions[joint * 3 + 2] = Float.parseFloat(components[index++]);
+                    if((jointFlags & 8) != 0) qx = Float.parseFloat(components[index++]);
+                    if((jointFlags & 16) != 0) qy = Float.parseFloat(components[index++]);
+                    if((jointFlags & 32) != 0) qz = Float.parseFloat(components[index]);
+                    writeQuaternion(qx, qy, qz, orientations, b);
+                }
+                if(frame >= 0 && frame < framePositions.length) {
+                    framePositions[frame] = positions;
+                    frameOrientations[frame] = orientations;
+                }
+            }
+        }
+
+        for(int i = 0 ; i < framePositions.length ; ++i) {
+            if(framePositions[i] == null) throw new IOException("MD5 anim is missing frame " + i);
+        }
+        if(names.isEmpty()) {
+            throw new IOException("MD5 anim has no hierarchy");
+        }
+        return new MD5Skeleton(names.toArray(new String[0]), toIntArray(parents),
+                bindPositions.length == names.size() * 3 ? bindPositions : new float[names.size() * 3],
+                bindOrientations.length == names.size() * 4 ? bindOrientations : new float[names.size() * 4],
+                framePositions, frameOrientations, frameRate);
+    }
+
+    // same w reconstruction as MD5Model.Parser.calculateQuaternion
+    private static void writeQuaternion(float x, float y, float z, float[] out, int o) {
+        float w = 1.0f - (x * x) - (y * y) - (z * z);
+        out[o] = x;
+        out[o + 1] = y;
+        out[o + 2] = z;
+        out[o + 3] = w < 0.0f ? 0.0f : -(float) Math.sqrt(w);
+    }
+
+    private static void skipBlock(BufferedReader reader) throws IOException {
+        String line;
+        while((line = reader.readLine()) != null && !stripComment(line).contains("}")) {
+            // discard
+        }
+    }
+
+    private static String stripComment(String line) {
+        int comment = line.indexOf("//");
+        return comment < 0 ? line : line.substring(0, comment);
+    }
+
+    private static String[] tokenize(String line) {
+        String trimmed = stripComment(line).trim();
+        return trimmed.isEmpty() ? new String[0] : WHITESPACE.split(trimmed);
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for(int i = 0 ; i < array.length ; ++i) array[i] = list.get(i);
+        return array;
+    }
+}